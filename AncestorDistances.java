@@ -0,0 +1,86 @@
+/*
+AncestorDistances is the result of one full upward BFS: every vertex reachable
+from a set of sources, sorted by vertex id, with its distance from the nearest
+source. Two of them are enough to answer length() and ancestor() for their
+sources by a single merge, without touching the graph again, so a batch of
+queries over n vertex sets needs only n BFSs.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.util.Arrays;
+
+public class AncestorDistances {
+    private final int[] vertices;   // reachable vertices, ascending
+    private final int[] distances;  // distances[i] is the distance of vertices[i] from the sources
+
+    AncestorDistances(int[] vertices, int[] distances) {
+        this.vertices = vertices;
+        this.distances = distances;
+    }
+
+    // number of vertices reachable from the sources, the sources included
+    public int size() {
+        return vertices.length;
+    }
+
+    // the i-th reachable vertex in ascending order
+    public int vertex(int i) {
+        return vertices[i];
+    }
+
+    // distance of the i-th reachable vertex from the nearest source
+    public int distance(int i) {
+        return distances[i];
+    }
+
+    // distance of vertex v from the nearest source, or -1 if v is not reachable
+    public int distanceTo(int v) {
+        int i = Arrays.binarySearch(vertices, v);
+        return i < 0 ? -1 : distances[i];
+    }
+
+    // length of a shortest ancestral path between the sources of this and those of that,
+    // or -1 if they have no common ancestor
+    public int length(AncestorDistances that) {
+        int i = meet(that);
+        return i == -1 ? -1 : distances[i] + that.distances[Arrays.binarySearch(that.vertices, vertices[i])];
+    }
+
+    // a common ancestor of the sources of this and those of that on a shortest ancestral path,
+    // or -1 if they have no common ancestor
+    public int ancestor(AncestorDistances that) {
+        int i = meet(that);
+        return i == -1 ? -1 : vertices[i];
+    }
+
+    // both of the above from one merge
+    public AncestralPath path(AncestorDistances that) {
+        int i = meet(that);
+        if (i == -1) return AncestralPath.NONE;
+        return new AncestralPath(distances[i] + that.distances[Arrays.binarySearch(that.vertices, vertices[i])], vertices[i]);
+    }
+
+    // index into this of the first common ancestor with that on a shortest ancestral path, or -1 if there is none
+    private int meet(AncestorDistances that) {
+        int best = -1;
+        int shortest = Integer.MAX_VALUE;
+        int i = 0;
+        int j = 0;
+        while (i < vertices.length && j < that.vertices.length) {
+            if (vertices[i] < that.vertices[j]) i++;
+            else if (vertices[i] > that.vertices[j]) j++;
+            else {
+                int length = distances[i] + that.distances[j];
+                if (length < shortest) {
+                    shortest = length;
+                    best = i;
+                }
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+AncestorIndex stores, for every vertex of a DAG, the complete list of its
+ancestors (the vertex itself included) with their distances, sorted by
+ancestor id. With it a shortest ancestral path is found by merging two short
+lists instead of traversing the graph: the answer is the common entry with
+the smallest sum of distances.
+
+The lists are built once, parents before children, by merging the lists of a
+vertex's parents. They are kept in flat arrays, the list of v from starts[v]
+to ends[v], back to back when the index is built. In a hypernym DAG every
+synset has only a few dozen ancestors, so the index stays a small multiple of
+the graph; size() and bytes() report how big it actually is.
+
+A vertex added to the graph with CompactDigraph.withVertex() is a leaf, so no
+existing list changes: withVertex() here merges the new vertex's parents'
+lists and appends the result, sharing the arrays the same way CompactDigraph
+does. An edge added between existing vertices changes the lists of its source
+and of everything below it, and only those: withEdge() merges each of them
+again, parents first, and appends it in the same way, leaving the old list
+behind for any index that still reads it. Once the left-behind lists
+outnumber the live ones, the live ones are copied to new arrays.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.util.Arrays;
+
+public class AncestorIndex {
+    private final int V;
+    private final int size;           // entries of the arrays in use, by the lists of this index or left behind
+    private final int live;           // entries in the lists of this index's V vertices
+    private final int[] starts;       // the list of v is at starts[v] .. ends[v] - 1
+    private final int[] ends;
+    private final int[] ancestors;    // ancestor ids, ascending within each list
+    private final short[] distances;  // distances[i] is the distance from v to ancestors[i]
+    private final int[] tail;         // {V, size} of the newest index over these arrays, the only one that may append
+
+    // index every vertex of G, which must be acyclic
+    public AncestorIndex(CompactDigraph G) {
+        int[] order = G.topologicalOrder();
+        if (order == null) throw new IllegalArgumentException("digraph has a cycle");
+        V = G.V();
+        int[] adjOffsets = G.offsets();
+        int[] targets = G.targets();
+
+        // every edge goes from a vertex to one of its parents, which comes later in order,
+        // so walking the order backwards visits every parent before its children
+        int[][] lists = new int[V][];
+        short[][] dists = new short[V][];
+        int[] best = new int[V];
+        Arrays.fill(best, -1);
+        int[] touched = new int[V];
+        long total = 0;
+        for (int k = V - 1; k >= 0; k--) {
+            int v = order[k];
+            int count = 0;
+            best[v] = 0;
+            touched[count++] = v;
+            for (int e = adjOffsets[v]; e < adjOffsets[v + 1]; e++) {
+                int parent = targets[e];
+                int[] list = lists[parent];
+                short[] dist = dists[parent];
+                for (int i = 0; i < list.length; i++) {
+                    int a = list[i];
+                    int d = dist[i] + 1;
+                    if (best[a] == -1) touched[count++] = a;
+                    else if (best[a] <= d) continue;
+                    best[a] = d;
+                }
+            }
+            Arrays.sort(touched, 0, count);
+            lists[v] = Arrays.copyOf(touched, count);
+            dists[v] = new short[count];
+            for (int i = 0; i < count; i++) {
+                int d = best[touched[i]];
+                if (d > Short.MAX_VALUE) throw new IllegalArgumentException("ancestor too far away to index");
+                dists[v][i] = (short) d;
+                best[touched[i]] = -1;
+            }
+            total += count;
+        }
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("index would have " + total + " entries");
+
+        // flatten into one pair of arrays
+        size = (int) total;
+        live = size;
+        tail = new int[] { V, size };
+        starts = new int[V];
+        ends = new int[V];
+        ancestors = new int[(int) total];
+        distances = new short[(int) total];
+        for (int v = 0, at = 0; v < V; v++) {
+            starts[v] = at;
+            System.arraycopy(lists[v], 0, ancestors, at, lists[v].length);
+            System.arraycopy(dists[v], 0, distances, at, dists[v].length);
+            at += lists[v].length;
+            ends[v] = at;
+        }
+    }
+
+    private AncestorIndex(int V, int size, int live, int[] starts, int[] ends, int[] ancestors, short[] distances, int[] tail) {
+        this.V = V;
+        this.size = size;
+        this.live = live;
+        this.starts = starts;
+        this.ends = ends;
+        this.ancestors = ancestors;
+        this.distances = distances;
+        this.tail = tail;
+    }
+
+    // the index of the digraph with vertex V added, whose edges go to parents
+    public AncestorIndex withVertex(int... parents) {
+        for (int parent : parents) {
+            if (parent < 0 || parent >= V) throw new IllegalArgumentException("vertex " + parent + " is not between 0 and " + (V - 1));
+        }
+        long[] list = merge(V, parents, 0, parents.length, starts, ends, ancestors, distances);
+
+        synchronized (tail) {
+            int[] s = starts;
+            int[] e = ends;
+            int[] a = ancestors;
+            short[] d = distances;
+            int[] shared = tail;
+            if (tail[0] != V || tail[1] != size || V + 1 > s.length || size + list.length > a.length) {
+                // someone else has appended past this index, or the arrays are full: move to new ones
+                s = Arrays.copyOf(starts, Math.max(V + 1, V + (V >> 1) + 16));
+                e = Arrays.copyOf(ends, s.length);
+                a = Arrays.copyOf(ancestors, Math.max(size + list.length, size + (size >> 1) + 16));
+                d = Arrays.copyOf(distances, a.length);
+                shared = new int[] { V, size };
+            }
+            s[V] = size;
+            e[V] = append(list, a, d, size);
+            shared[0] = V + 1;
+            shared[1] = e[V];
+            return new AncestorIndex(V + 1, e[V], live + list.length, s, e, a, d, shared);
+        }
+    }
+
+    // The index of G, which is the indexed digraph with an edge added from below[0], and below the vertices
+    // whose lists that edge changes: below[0] and every vertex below it, each after its parents, as
+    // CompactDigraph.descendants() lists them. Their lists are merged again in that order and appended; the
+    // other lists are shared. Costs the merges of those lists, and a copy of starts and ends
+    public AncestorIndex withEdge(CompactDigraph G, int[] below) {
+        if (G.V() != V) throw new IllegalArgumentException("index is for another digraph");
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+        int[] s = Arrays.copyOf(starts, starts.length);
+        int[] e = Arrays.copyOf(ends, ends.length);
+        synchronized (tail) {
+            int[] a = ancestors;
+            short[] d = distances;
+            int[] shared = tail;
+            if (tail[0] != V || tail[1] != size) {
+                // someone else has appended past this index: move to new arrays
+                a = Arrays.copyOf(ancestors, size + (size >> 3) + 16);
+                d = Arrays.copyOf(distances, a.length);
+                shared = new int[] { V, size };
+            }
+            int used = size;
+            int count = live;
+            for (int v : below) {
+                long[] list = merge(v, targets, offsets[v], offsets[v + 1], s, e, a, d);
+                if (used + list.length > a.length) {
+                    a = Arrays.copyOf(a, Math.max(used + list.length, used + (used >> 1) + 16));
+                    d = Arrays.copyOf(d, a.length);
+                    shared = new int[] { V, used };
+                }
+                count += list.length - (e[v] - s[v]);
+                s[v] = used;
+                e[v] = append(list, a, d, used);
+                used = e[v];
+            }
+            if (used - count > count) return compact(V, count, s, e, a, d);
+            shared[0] = V;
+            shared[1] = used;
+            return new AncestorIndex(V, used, count, s, e, a, d, shared);
+        }
+    }
+
+    // the lists of V vertices, live entries in all, moved back to back into new arrays
+    private static AncestorIndex compact(int V, int live, int[] starts, int[] ends, int[] ancestors, short[] distances) {
+        int[] s = new int[starts.length];
+        int[] e = new int[ends.length];
+        int[] a = new int[live + (live >> 3) + 16];
+        short[] d = new short[a.length];
+        int at = 0;
+        for (int v = 0; v < V; v++) {
+            int n = ends[v] - starts[v];
+            System.arraycopy(ancestors, starts[v], a, at, n);
+            System.arraycopy(distances, starts[v], d, at, n);
+            s[v] = at;
+            at += n;
+            e[v] = at;
+        }
+        return new AncestorIndex(V, at, live, s, e, a, d, new int[] { V, at });
+    }
+
+    // The list of v, whose parents are parents[from..to) and have their lists in place: v itself at distance 0
+    // and every ancestor of a parent at its distance + 1, once each at its shortest distance, in ascending
+    // order of ancestor, packed as ancestor << 32 | distance
+    private static long[] merge(int v, int[] parents, int from, int to, int[] starts, int[] ends, int[] ancestors, short[] distances) {
+        int count = 1;
+        for (int k = from; k < to; k++) count += ends[parents[k]] - starts[parents[k]];
+
+        // packed so that sorting orders by ancestor, then distance
+        long[] entries = new long[count];
+        int n = 0;
+        entries[n++] = (long) v << 32;
+        for (int k = from; k < to; k++) {
+            for (int i = starts[parents[k]]; i < ends[parents[k]]; i++) {
+                entries[n++] = ((long) ancestors[i] << 32) | (distances[i] + 1);
+            }
+        }
+        Arrays.sort(entries);
+        n = 0;
+        for (long entry : entries) {
+            if (n > 0 && entries[n - 1] >>> 32 == entry >>> 32) continue;   // a longer way to the same ancestor
+            if ((int) entry > Short.MAX_VALUE) throw new IllegalArgumentException("ancestor too far away to index");
+            entries[n++] = entry;
+        }
+        return Arrays.copyOf(entries, n);
+    }
+
+    // write list into ancestors and distances from at on; returns where it ends
+    private static int append(long[] list, int[] ancestors, short[] distances, int at) {
+        for (long entry : list) {
+            ancestors[at] = (int) (entry >>> 32);
+            distances[at++] = (short) entry;
+        }
+        return at;
+    }
+
+    // number of indexed vertices
+    public int V() {
+        return V;
+    }
+
+    // total number of (vertex, ancestor) entries
+    public long size() {
+        return live;
+    }
+
+    // heap used by the index arrays
+    public long bytes() {
+        return 4L * starts.length + 4L * ends.length + 4L * ancestors.length + 2L * distances.length;
+    }
+
+    // length of shortest ancestral path between v and w, or -1 if they have no common ancestor
+    public int length(int v, int w) {
+        int i = meet(v, w);
+        return i == -1 ? -1 : distances[i] + distances[Arrays.binarySearch(ancestors, starts[w], ends[w], ancestors[i])];
+    }
+
+    // a shortest common ancestor of v and w, or -1 if they have none
+    public int ancestor(int v, int w) {
+        int i = meet(v, w);
+        return i == -1 ? -1 : ancestors[i];
+    }
+
+    // both of the above from one merge
+    public AncestralPath path(int v, int w) {
+        return AncestralPath.unpack(query(v, w));
+    }
+
+    // the same, packed as AncestralPath.pack() does
+    long query(int v, int w) {
+        int i = meet(v, w);
+        if (i == -1) return -1;
+        return AncestralPath.pack(distances[i] + distances[Arrays.binarySearch(ancestors, starts[w], ends[w], ancestors[i])], ancestors[i]);
+    }
+
+    public String toString() {
+        return String.format("AncestorIndex: %d vertices, %d entries (%.1f per vertex), %d bytes",
+                             V, size(), (double) size() / Math.max(1, V), bytes());
+    }
+
+    // position in the list of v of the first common ancestor with w on a shortest ancestral path, or -1
+    private int meet(int v, int w) {
+        int best = -1;
+        int shortest = Integer.MAX_VALUE;
+        int i = starts[v];
+        int j = starts[w];
+        int iEnd = ends[v];
+        int jEnd = ends[w];
+        while (i < iEnd && j < jEnd) {
+            if (ancestors[i] < ancestors[j]) i++;
+            else if (ancestors[i] > ancestors[j]) j++;
+            else {
+                int length = distances[i] + distances[j];
+                if (length < shortest) {
+                    shortest = length;
+                    best = i;
+                }
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+
+    // the raw lists, for ShortestCommonAncestor's subset queries; callers must not modify them
+    int[] starts() {
+        return starts;
+    }
+
+    int[] ends() {
+        return ends;
+    }
+
+    int[] ancestors() {
+        return ancestors;
+    }
+
+    short[] distances() {
+        return distances;
+    }
+}
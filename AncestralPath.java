@@ -0,0 +1,68 @@
+/*
+AncestralPath is the answer to one shortest common ancestor query: the length
+of a shortest ancestral path and the common ancestor at its end. A search
+finds both at once, so a caller that needs both asks for the path instead of
+calling length() and ancestor() and searching twice.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+public class AncestralPath {
+    static final AncestralPath NONE = new AncestralPath(-1, -1);
+
+    private final int length;       // -1 if there is no common ancestor
+    private final int ancestor;     // -1 if there is no common ancestor
+
+    AncestralPath(int length, int ancestor) {
+        this.length = length;
+        this.ancestor = ancestor;
+    }
+
+    // the path packed into one long, as ShortestCommonAncestor's kernel passes it around without allocating:
+    // the length in the high half and the ancestor in the low half; no path packs to -1
+    static long pack(int length, int ancestor) {
+        return (long) length << 32 | (ancestor & 0xFFFFFFFFL);
+    }
+
+    static int length(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    static int ancestor(long packed) {
+        return (int) packed;
+    }
+
+    static AncestralPath unpack(long packed) {
+        return packed == -1 ? NONE : new AncestralPath(length(packed), ancestor(packed));
+    }
+
+    // is there a common ancestor at all?
+    public boolean exists() {
+        return ancestor != -1;
+    }
+
+    // length of a shortest ancestral path, or -1 if there is no common ancestor
+    public int length() {
+        return length;
+    }
+
+    // the common ancestor at the end of that path, or -1 if there is none
+    public int ancestor() {
+        return ancestor;
+    }
+
+    public boolean equals(Object other) {
+        if (!(other instanceof AncestralPath)) return false;
+        AncestralPath that = (AncestralPath) other;
+        return length == that.length && ancestor == that.ancestor;
+    }
+
+    public int hashCode() {
+        return 31 * length + ancestor;
+    }
+
+    public String toString() {
+        return exists() ? "length " + length + " via " + ancestor : "no common ancestor";
+    }
+}
@@ -0,0 +1,1251 @@
+/*
+Benchmark is a command line client that times ShortestCommonAncestor,
+WordNet and Outcast on synthetic and real inputs. It is a quick check that
+needs nothing but the classes themselves; the JMH benchmarks in jmh/ are the
+ones to compare engines and catch regressions with, since JMH forks, warms
+up, reports error bounds and profiles allocation with -prof gc. They use
+this class's synthetic DAGs and Zipf draws, so both measure the same inputs. Each scenario prints one
+line per input size or round, so a regression shows up as a change in the
+per-unit cost. Scenarios that allocate also report bytes allocated by the
+benchmark thread and the collections that ran, from the management beans.
+Run with the same JVM flags every time. Every scenario first runs WARMUP
+rounds of its measured loops that it does not print, so the JIT has
+compiled them before the first printed round; startup is the exception,
+as its first round is meant to be cold. Results of the timed loops go
+into a volatile sink, so the JIT cannot drop a query whose answer is
+unused. suite runs each scenario in a JVM of its own, started with the
+same flags, so no scenario inherits the heap or the compiled code of the
+one before it.
+
+    java Benchmark ladder                         diamond ladder DAGs of increasing height
+    java Benchmark synthetic                      int and subset length() on chains, fan-ins and diamond ladders
+    java Benchmark construct synsets hypernyms    WordNet construction time, allocation and GC
+    java Benchmark distance synsets hypernyms     WordNet.distance() on uniform and Zipf-skewed noun pairs
+    java Benchmark outcast synsets hypernyms      Outcast.outcast() for 5 to 500 nouns
+    java Benchmark alloc synsets hypernyms        bytes allocated per ShortestCommonAncestor query
+    java Benchmark csr synsets hypernyms          heap and BFS throughput, Digraph against CompactDigraph
+    java Benchmark startup synsets hypernyms      WordNet from CSV files against WordNet.load() of a snapshot
+    java Benchmark parse synsets hypernyms        time and allocation to tokenize and load the CSV files
+    java Benchmark load synsets hypernyms         sequential against fork-join WordNet construction
+    java Benchmark cache synsets hypernyms        distance() on Zipf-skewed pairs, uncached, LRU and TinyLFU
+    java Benchmark index synsets hypernyms        AncestorIndex build time and size, and length() with and without it
+    java Benchmark dictionary synsets hypernyms   heap, GC and lookup cost of Bag-based noun tables against NounDictionary
+    java Benchmark metrics synsets hypernyms      query cost with QueryMetrics off and on, and the metrics over JMX
+    java Benchmark update synsets hypernyms       addSynset(), addNoun() and addHypernym() against reloading the files
+    java Benchmark nearest synsets hypernyms      nearest(noun, k) for k from 1 to 10000, against distance() to every noun
+    java Benchmark matrix synsets hypernyms       DistanceMatrix export, dense and sparse, against distance() per pair
+    java Benchmark server synsets hypernyms       WordNetServer throughput and latency for 1 to 64 clients, with and without pipelining
+    java Benchmark strategy synsets hypernyms     BFS, bidirectional and index strategies, path() against length() plus ancestor()
+    java Benchmark lanes synsets hypernyms        ancestors of many nouns, one BFS per noun against 64-lane bit-parallel BFS
+    java Benchmark lazy synsets hypernyms         load time, dictionary size and sca() cost of WordNet against WordNet.lazy()
+    java Benchmark packed synsets hypernyms       PackedDigraph file size, build time and path() cost for cache sizes from 1 to 4096 blocks
+    java Benchmark similarity synsets hypernyms   Wu-Palmer ranking of candidates by three searches each, by similarity() and by similarities()
+    java Benchmark suite synsets hypernyms        every scenario above, one after the other, each in a fresh JVM
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import edu.princeton.cs.algs4.Bag;
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.LinearProbingHashST;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class Benchmark {
+    private static final int WARMUP = 2;    // unprinted rounds before the measured ones
+
+    private static volatile long sink;      // written with every timed result, so none of them is dead code
+
+    // hand a result of a timed loop to the sink; add results up in a local and consume the sum
+    // once per loop, since a volatile write per query would be part of what is timed
+    public static void consume(long value) {
+        sink += value;
+    }
+
+    public static void consume(double value) {
+        sink += Double.doubleToRawLongBits(value);
+    }
+
+    // a ladder of diamonds: 0 is the bottom, every rung adds two parallel vertices
+    // that join again one level up, so the number of distinct paths from 0 to the
+    // top doubles with every rung while V and E only grow linearly.
+    // vertex V - 1 is a second leaf hanging off the top, so the only common
+    // ancestor of 0 and V - 1 is the top and a query has to climb every rung.
+    public static Digraph diamondLadder(int rungs) {
+        Digraph G = new Digraph(3 * rungs + 2);
+        for (int i = 0; i < rungs; i++) {
+            int join = 3 * i;
+            G.addEdge(join, join + 1);
+            G.addEdge(join, join + 2);
+            G.addEdge(join + 1, join + 3);
+            G.addEdge(join + 2, join + 3);
+        }
+        G.addEdge(G.V() - 1, 3 * rungs);
+        return G;
+    }
+
+    // a single path 0 -> 1 -> ... -> length - 1, with vertex length as a second leaf
+    // hanging off the top: the only common ancestor of 0 and length is the top
+    public static Digraph deepChain(int length) {
+        Digraph G = new Digraph(length + 1);
+        for (int v = 0; v + 1 < length; v++) G.addEdge(v, v + 1);
+        G.addEdge(length, length - 1);
+        return G;
+    }
+
+    // width leaves 0 .. width - 1 under a single root, vertex width: every pair of leaves
+    // meets at distance 2, but a subset query over many leaves still touches all of them
+    public static Digraph wideFanIn(int width) {
+        Digraph G = new Digraph(width + 1);
+        for (int v = 0; v < width; v++) G.addEdge(v, width);
+        return G;
+    }
+
+    // ns and bytes per query for length(v, w) and for length() on the subsets {v, ...} and {w, ...}
+    private static void synthetic(String shape, Digraph G, int v, int w, Iterable<Integer> A, Iterable<Integer> B)
+            throws IOException {
+        ShortestCommonAncestor sca = new ShortestCommonAncestor(G);
+        int queries = Math.max(10, 2000000 / G.V());
+        long sum = 0;
+        for (int round = 0; round < WARMUP; round++) {
+            for (int i = 0; i < queries; i++) sum += sca.length(v, w) + sca.length(A, B);
+        }
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) sum += sca.length(v, w);
+        long perInt = (System.nanoTime() - start) / queries;
+        double intBytes = (double) (allocatedBytes() - bytes) / queries;
+
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) sum += sca.length(A, B);
+        long perSubset = (System.nanoTime() - start) / queries;
+        double subsetBytes = (double) (allocatedBytes() - bytes) / queries;
+        consume(sum);
+
+        StdOut.printf("%-8s %8d %8d %12d %10.1f %12d %10.1f%n", shape, G.V(), G.E(),
+                      perInt, intBytes, perSubset, subsetBytes);
+    }
+
+    // the int and subset overloads of length() on each synthetic shape, at growing sizes
+    public static void synthetic() throws IOException {
+        StdOut.printf("%-8s %8s %8s %12s %10s %12s %10s%n", "shape", "V", "E",
+                      "int ns", "int B", "subset ns", "subset B");
+        for (int n = 1024; n <= 262144; n *= 8) {
+            Digraph chain = deepChain(n);
+            synthetic("chain", chain, 0, n, Arrays.asList(0, n / 2), Arrays.asList(n));
+
+            Digraph fan = wideFanIn(n);
+            ArrayList<Integer> left = new ArrayList<Integer>();
+            ArrayList<Integer> right = new ArrayList<Integer>();
+            for (int v = 0; v < n; v++) (v % 2 == 0 ? left : right).add(v);
+            synthetic("fan-in", fan, 0, 1, left, right);
+
+            Digraph ladder = diamondLadder(n / 3);
+            int top = ladder.V() - 1;
+            synthetic("ladder", ladder, 0, top, Arrays.asList(0, 1, 2), Arrays.asList(top));
+        }
+    }
+
+    // time length() between the two leaves of diamond ladders of growing height;
+    // with a visited-set-bounded BFS the cost per (V + E) stays flat
+    public static void ladder() throws IOException {
+        StdOut.printf("%8s %8s %8s %12s %14s%n", "rungs", "V", "E", "ns/query", "ns/(V+E)");
+        for (int rungs = 16; rungs <= 65536; rungs *= 4) {
+            Digraph G = diamondLadder(rungs);
+            ShortestCommonAncestor sca = new ShortestCommonAncestor(G);
+            int v = 0;
+            int w = G.V() - 1;
+
+            int queries = Math.max(10, 2000000 / G.V());
+            long sum = 0;
+            for (int i = 0; i < WARMUP * queries; i++) sum += sca.length(v, w);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum += sca.length(v, w);
+            long perQuery = (System.nanoTime() - start) / queries;
+            consume(sum);
+
+            StdOut.printf("%8d %8d %8d %12d %14.2f%n", rungs, G.V(), G.E(), perQuery,
+                          (double) perQuery / (G.V() + G.E()));
+        }
+    }
+
+    // every noun of a WordNet, in nouns() order
+    public static String[] nouns(WordNet wordnet) {
+        ArrayList<String> nouns = new ArrayList<String>();
+        for (String noun : wordnet.nouns()) nouns.add(noun);
+        return nouns.toArray(new String[0]);
+    }
+
+    // time distance() on noun pairs drawn uniformly, and drawn from a Zipf distribution over the nouns
+    // so that a few nouns take part in most queries
+    public static void distance(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        String[] nouns = nouns(wordnet);
+        Random random = new Random(42);
+        int queries = 20000;
+        int[] uniform = new int[2 * queries];
+        for (int i = 0; i < uniform.length; i++) uniform[i] = random.nextInt(nouns.length);
+        int[] skewed = zipf(nouns.length, 2 * queries, random);
+
+        StdOut.printf("%8s %12s %12s%n", "round", "uniform ns", "zipf ns");
+        for (int round = -WARMUP; round < 5; round++) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum += wordnet.distance(nouns[uniform[2 * i]], nouns[uniform[2 * i + 1]]);
+            long perUniform = (System.nanoTime() - start) / queries;
+
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum += wordnet.distance(nouns[skewed[2 * i]], nouns[skewed[2 * i + 1]]);
+            long perSkewed = (System.nanoTime() - start) / queries;
+            consume(sum);
+            if (round >= 0) StdOut.printf("%8d %12d %12d%n", round, perUniform, perSkewed);
+        }
+    }
+
+    // bytes allocated so far by the calling thread
+    public static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // collections run so far, over every collector
+    public static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    // milliseconds spent collecting so far, over every collector
+    public static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+
+    // time, allocation and garbage collection of the sequential WordNet constructor
+    public static void construct(String synsets, String hypernyms) throws IOException {
+        StdOut.printf("%8s %10s %14s %6s %8s%n", "round", "ms", "MB allocated", "GCs", "GC ms");
+        for (int round = -WARMUP; round < 5; round++) {
+            long bytes = allocatedBytes();
+            long collections = gcCount();
+            long collecting = gcMillis();
+            long start = System.nanoTime();
+            WordNet wordnet = new WordNet(synsets, hypernyms);
+            long nanos = System.nanoTime() - start;
+            consume(wordnet.synsetCount());
+            if (round >= 0) StdOut.printf("%8d %10.1f %14.1f %6d %8d%n", round, nanos / 1e6,
+                                          (allocatedBytes() - bytes) / 1e6, gcCount() - collections, gcMillis() - collecting);
+        }
+    }
+
+    // Outcast.outcast() on random groups of 5 to 500 nouns; cost grows with the n * (n - 1) / 2 distances
+    public static void outcast(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        Outcast outcast = new Outcast(wordnet);
+        String[] nouns = nouns(wordnet);
+        Random random = new Random(42);
+        StdOut.printf("%8s %12s %14s %6s %8s%n", "n", "ms/outcast", "KB/outcast", "GCs", "GC ms");
+        for (int n : new int[] { 5, 10, 20, 50, 100, 200, 500 }) {
+            int groups = Math.max(3, 20000 / (n * n));
+            String[][] group = new String[groups][n];
+            for (String[] g : group) {
+                for (int i = 0; i < n; i++) g[i] = nouns[random.nextInt(nouns.length)];
+            }
+            long sum = 0;
+            for (int round = 0; round < WARMUP; round++) {
+                for (String[] g : group) sum += outcast.outcast(g).length();
+            }
+
+            long bytes = allocatedBytes();
+            long collections = gcCount();
+            long collecting = gcMillis();
+            long start = System.nanoTime();
+            for (String[] g : group) sum += outcast.outcast(g).length();
+            long nanos = System.nanoTime() - start;
+            consume(sum);
+            StdOut.printf("%8d %12.3f %14.1f %6d %8d%n", n, nanos / 1e6 / groups,
+                          (allocatedBytes() - bytes) / 1e3 / groups, gcCount() - collections, gcMillis() - collecting);
+        }
+    }
+
+    // bytes allocated per steady-state length() query, for the int and the subset overloads
+    public static void alloc(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        ShortestCommonAncestor sca = wordnet.engine();
+        String[] nouns = nouns(wordnet);
+        Random random = new Random(42);
+        int queries = 100000;
+
+        int[] v = new int[queries];
+        int[] w = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            v[i] = random.nextInt(wordnet.synsetCount());
+            w[i] = random.nextInt(wordnet.synsetCount());
+        }
+        long sum = 0;
+        for (int i = 0; i < WARMUP * queries; i++) sum += sca.length(v[i % queries], w[i % queries]);
+        long before = allocatedBytes();
+        for (int i = 0; i < queries; i++) sum += sca.length(v[i], w[i]);
+        StdOut.printf("length(int, int)            %8.1f bytes/query%n", (double) (allocatedBytes() - before) / queries);
+
+        for (int i = 0; i < WARMUP * queries; i++) {
+            sum += wordnet.distance(nouns[v[i % queries] % nouns.length], nouns[w[i % queries] % nouns.length]);
+        }
+        before = allocatedBytes();
+        for (int i = 0; i < queries; i++) sum += wordnet.distance(nouns[v[i] % nouns.length], nouns[w[i] % nouns.length]);
+        StdOut.printf("WordNet.distance()          %8.1f bytes/query%n", (double) (allocatedBytes() - before) / queries);
+        consume(sum);
+    }
+
+    // the hypernym graph of a WordNet as an algs4 Digraph, read the way WordNet used to
+    public static Digraph hypernymDigraph(String synsets, String hypernyms) {
+        int V = new In(synsets).readAllLines().length;
+        Digraph G = new Digraph(V);
+        In in = new In(hypernyms);
+        while (in.hasNextLine()) {
+            String[] parts = in.readLine().split(",");
+            for (int i = 1; i < parts.length; i++) {
+                G.addEdge(Integer.parseInt(parts[0]), Integer.parseInt(parts[i]));
+            }
+        }
+        return G;
+    }
+
+    // heap in use after a full collection
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // visit the whole upward closure of s, returns the number of vertices reached
+    private static int closure(Digraph G, int s, int[] mark, int stamp, int[] queue) {
+        int head = 0;
+        int tail = 0;
+        mark[s] = stamp;
+        queue[tail++] = s;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int w : G.adj(v)) {
+                if (mark[w] == stamp) continue;
+                mark[w] = stamp;
+                queue[tail++] = w;
+            }
+        }
+        return tail;
+    }
+
+    private static int closure(CompactDigraph G, int s, int[] mark, int stamp, int[] queue) {
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+        int head = 0;
+        int tail = 0;
+        mark[s] = stamp;
+        queue[tail++] = s;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int w = targets[i];
+                if (mark[w] == stamp) continue;
+                mark[w] = stamp;
+                queue[tail++] = w;
+            }
+        }
+        return tail;
+    }
+
+    // heap footprint of the hypernym graph and the speed of a BFS over it, in both representations
+    public static void csr(String synsets, String hypernyms) {
+        long before = usedHeap();
+        Digraph digraph = hypernymDigraph(synsets, hypernyms);
+        long digraphBytes = usedHeap() - before;
+
+        before = usedHeap();
+        CompactDigraph compact = new CompactDigraph(digraph);
+        long compactBytes = usedHeap() - before;
+
+        int V = digraph.V();
+        int[] mark = new int[V];
+        int[] queue = new int[V];
+        int sources = 200000;
+        int stamp = 0;
+        StdOut.printf("%-16s %12s %16s%n", "graph", "heap bytes", "ns/closure BFS");
+        for (int round = -WARMUP; round < 3; round++) {
+            Random random = new Random(42);
+            long reached = 0;
+            long start = System.nanoTime();
+            for (int i = 1; i <= sources; i++) reached += closure(digraph, random.nextInt(V), mark, ++stamp, queue);
+            long digraphTime = (System.nanoTime() - start) / sources;
+
+            random = new Random(42);
+            start = System.nanoTime();
+            for (int i = 1; i <= sources; i++) reached -= closure(compact, random.nextInt(V), mark, ++stamp, queue);
+            long compactTime = (System.nanoTime() - start) / sources;
+
+            if (reached != 0) throw new IllegalStateException("representations disagree");
+            if (round < 0) continue;
+            StdOut.printf("%-16s %12d %16d%n", "Digraph", digraphBytes, digraphTime);
+            StdOut.printf("%-16s %12d %16d%n", "CompactDigraph", compactBytes, compactTime);
+        }
+    }
+
+    // time to a queryable WordNet, parsing the CSV files against loading a saved snapshot.
+    // The first round is the closest to a cold start, later rounds show the JIT-compiled cost
+    public static void startup(String synsets, String hypernyms) throws IOException {
+        Path snapshot = Files.createTempFile("wordnet", ".snapshot");
+        try {
+            new WordNet(synsets, hypernyms).save(snapshot);
+            StdOut.printf("%8s %12s %12s%n", "round", "csv ms", "snapshot ms");
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                WordNet parsed = new WordNet(synsets, hypernyms);
+                long csv = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                WordNet loaded = WordNet.load(snapshot);
+                long load = System.nanoTime() - start;
+                consume(parsed.synsetCount() - loaded.synsetCount());
+                StdOut.printf("%8d %12.1f %12.1f%n", round, csv / 1e6, load / 1e6);
+            }
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    // tokenize both files with BufferedReader and String.split, the way WordNet used to
+    private static long splitParse(String synsets, String hypernyms) throws IOException {
+        long checksum = 0;
+        BufferedReader input = new BufferedReader(new FileReader(synsets));
+        for (String line = input.readLine(); line != null; line = input.readLine()) {
+            String[] parts = line.split(",");
+            checksum += Integer.parseInt(parts[0]);
+            checksum += parts[1].split(" ").length;
+        }
+        input.close();
+        input = new BufferedReader(new FileReader(hypernyms));
+        for (String line = input.readLine(); line != null; line = input.readLine()) {
+            String[] parts = line.split(",");
+            for (String part : parts) checksum += Integer.parseInt(part);
+        }
+        input.close();
+        return checksum;
+    }
+
+    // tokenize both files with CsvScanner
+    private static long scanParse(String synsets, String hypernyms) throws IOException {
+        long checksum = 0;
+        CsvScanner input = CsvScanner.open(synsets);
+        CsvScanner.StringPool pool = new CsvScanner.StringPool();
+        while (input.hasNext()) {
+            checksum += input.readInt();
+            input.skip(',');
+            do {
+                input.readWord(pool);
+                checksum++;
+            } while (input.skip(' '));
+            input.skipLine();
+        }
+        input = CsvScanner.open(hypernyms);
+        while (input.hasNext()) {
+            checksum += input.readInt();
+            while (input.skip(',')) checksum += input.readInt();
+            input.skipLine();
+        }
+        return checksum;
+    }
+
+    // tokenizing alone, old against new, then the whole WordNet constructor
+    public static void parse(String synsets, String hypernyms) throws IOException {
+        StdOut.printf("%8s %-12s %10s %14s%n", "round", "phase", "ms", "MB allocated");
+        for (int round = -WARMUP; round < 5; round++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            long split = splitParse(synsets, hypernyms);
+            long splitNanos = System.nanoTime() - start;
+            long splitBytes = allocatedBytes() - bytes;
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            long scan = scanParse(synsets, hypernyms);
+            long scanNanos = System.nanoTime() - start;
+            long scanBytes = allocatedBytes() - bytes;
+            if (split != scan) throw new IllegalStateException("tokenizers disagree");
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            WordNet wordnet = new WordNet(synsets, hypernyms);
+            long wordnetNanos = System.nanoTime() - start;
+            long wordnetBytes = allocatedBytes() - bytes;
+            consume(wordnet.synsetCount());
+            if (round < 0) continue;
+            StdOut.printf("%8d %-12s %10.1f %14.1f%n", round, "split", splitNanos / 1e6, splitBytes / 1e6);
+            StdOut.printf("%8d %-12s %10.1f %14.1f%n", round, "scan", scanNanos / 1e6, scanBytes / 1e6);
+            StdOut.printf("%8d %-12s %10.1f %14.1f%n", round, "WordNet", wordnetNanos / 1e6, wordnetBytes / 1e6);
+        }
+    }
+
+    // the sequential constructor against the parallel one on pools of 1, 2, 4, ... threads
+    public static void load(String synsets, String hypernyms) throws IOException {
+        StdOut.printf("%8s %8s %10s%n", "round", "threads", "ms");
+        for (int round = -WARMUP; round < 3; round++) {
+            long start = System.nanoTime();
+            WordNet wordnet = new WordNet(synsets, hypernyms);
+            long nanos = System.nanoTime() - start;
+            consume(wordnet.synsetCount());
+            if (round >= 0) StdOut.printf("%8d %8s %10.1f%n", round, "seq", nanos / 1e6);
+            for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                start = System.nanoTime();
+                wordnet = new WordNet(synsets, hypernyms, pool);
+                nanos = System.nanoTime() - start;
+                consume(wordnet.synsetCount());
+                if (round >= 0) StdOut.printf("%8d %8d %10.1f%n", round, threads, nanos / 1e6);
+                pool.shutdown();
+            }
+        }
+    }
+
+    // n indices in [0, domain) drawn from a Zipf(1) distribution, 0 the most frequent
+    public static int[] zipf(int domain, int n, Random random) {
+        double[] cumulative = new double[domain];
+        double sum = 0;
+        for (int i = 0; i < domain; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        int[] drawn = new int[n];
+        for (int i = 0; i < n; i++) {
+            int k = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            drawn[i] = Math.min(domain - 1, k < 0 ? -k - 1 : k);
+        }
+        return drawn;
+    }
+
+    // distance() on a skewed stream of pairs, without a cache and with each cache policy
+    public static void cache(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        String[] nouns = nouns(wordnet);
+        Random random = new Random(42);
+        int pairs = 200000;
+        String[] first = new String[pairs];
+        String[] second = new String[pairs];
+        for (int i = 0; i < pairs; i++) {
+            first[i] = nouns[random.nextInt(nouns.length)];
+            second[i] = nouns[random.nextInt(nouns.length)];
+        }
+        int[] stream = zipf(pairs, 500000, random);
+
+        StdOut.printf("%-10s %12s %10s %12s%n", "cache", "ns/query", "hit rate", "evictions");
+        for (String mode : new String[] { "none", "LRU", "TINY_LFU" }) {
+            long sum = 0;
+            long perQuery = 0;
+            for (int round = -WARMUP; round <= 0; round++) {    // an empty cache every round, round 0 is reported
+                if (mode.equals("none")) wordnet.disableCache();
+                else wordnet.enableCache(10000, QueryCache.Policy.valueOf(mode));
+                long start = System.nanoTime();
+                for (int k : stream) sum += wordnet.distance(first[k], second[k]);
+                perQuery = (System.nanoTime() - start) / stream.length;
+            }
+            consume(sum);
+            QueryCache cache = wordnet.cache();
+            double hitRate = cache == null ? 0 : (double) cache.hits() / (cache.hits() + cache.misses());
+            StdOut.printf("%-10s %12d %10.3f %12d%n", mode, perQuery, hitRate, cache == null ? 0 : cache.evictions());
+        }
+    }
+
+    // cost of building the ancestor index, its size, and length() on random synset pairs with and without it
+    public static void index(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        ShortestCommonAncestor bfs = wordnet.engine();
+        long start = System.nanoTime();
+        AncestorIndex index = wordnet.buildIndex();
+        StdOut.printf("build %.1f ms, %s%n", (System.nanoTime() - start) / 1e6, index);
+        ShortestCommonAncestor indexed = wordnet.engine();
+
+        Random random = new Random(42);
+        int queries = 200000;
+        int[] v = new int[queries];
+        int[] w = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            v[i] = random.nextInt(wordnet.synsetCount());
+            w[i] = random.nextInt(wordnet.synsetCount());
+        }
+        StdOut.printf("%8s %12s %12s%n", "round", "bfs ns", "index ns");
+        for (int round = -WARMUP; round < 5; round++) {
+            long sum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum += bfs.length(v[i], w[i]);
+            long perBfs = (System.nanoTime() - start) / queries;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum -= indexed.length(v[i], w[i]);
+            long perIndex = (System.nanoTime() - start) / queries;
+            if (sum != 0) throw new IllegalStateException("indexed lengths differ from BFS lengths");
+            if (round >= 0) StdOut.printf("%8d %12d %12d%n", round, perBfs, perIndex);
+        }
+    }
+
+    // Each ShortestCommonAncestor strategy on random synset pairs and on random subsets of three: path(),
+    // which searches once, against a length() and an ancestor() of the same pair, which search twice
+    public static void strategy(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        ShortestCommonAncestor plain = wordnet.engine();
+        wordnet.buildIndex();
+        ShortestCommonAncestor indexed = wordnet.engine();
+
+        Random random = new Random(42);
+        int queries = 20000;
+        int[][] A = new int[queries][];
+        int[][] B = new int[queries][];
+        for (int i = 0; i < queries; i++) {
+            int size = i % 2 == 0 ? 1 : 3;
+            A[i] = new int[size];
+            B[i] = new int[size];
+            for (int k = 0; k < size; k++) {
+                A[i][k] = random.nextInt(wordnet.synsetCount());
+                B[i][k] = random.nextInt(wordnet.synsetCount());
+            }
+        }
+        StdOut.printf("%8s %14s %14s %18s%n", "round", "strategy", "ns/path", "ns/length+ancestor");
+        for (int round = -WARMUP; round < 3; round++) {
+            long expected = -1;
+            for (ShortestCommonAncestor.Strategy strategy : ShortestCommonAncestor.Strategy.values()) {
+                ShortestCommonAncestor sca = (strategy == ShortestCommonAncestor.Strategy.INDEX ? indexed : plain).withStrategy(strategy);
+                long sum = 0;
+                long ancestors = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < queries; i++) {
+                    AncestralPath path = sca.path(A[i], B[i]);
+                    sum += path.length();
+                    ancestors += path.ancestor();
+                }
+                long perPath = (System.nanoTime() - start) / queries;
+                if (expected != -1 && sum != expected) throw new IllegalStateException(strategy + " lengths differ");
+                expected = sum;
+                start = System.nanoTime();
+                for (int i = 0; i < queries; i++) {
+                    sum -= sca.length(A[i], B[i]);
+                    ancestors -= sca.ancestor(A[i], B[i]);
+                }
+                long perBoth = (System.nanoTime() - start) / queries;
+                if (sum != 0 || ancestors != 0) throw new IllegalStateException("path() disagrees with length() and ancestor()");
+                if (round >= 0) StdOut.printf("%8d %14s %14d %18d%n", round, strategy, perPath, perBoth);
+            }
+        }
+    }
+
+    // length() on random synset pairs without metrics and with them, in alternating rounds. Off is the
+    // engine WordNet builds by default; on records latency and traversal counts for every query
+    public static void metrics(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        ShortestCommonAncestor off = wordnet.engine();
+        QueryMetrics metrics = new QueryMetrics();
+        ShortestCommonAncestor on = off.withMetrics(metrics);
+
+        Random random = new Random(42);
+        int queries = 200000;
+        int[] v = new int[queries];
+        int[] w = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            v[i] = random.nextInt(wordnet.synsetCount());
+            w[i] = random.nextInt(wordnet.synsetCount());
+        }
+        StdOut.printf("%8s %12s %12s%n", "round", "off ns", "on ns");
+        for (int round = -WARMUP; round < 5; round++) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum += off.length(v[i], w[i]);
+            long perOff = (System.nanoTime() - start) / queries;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sum -= on.length(v[i], w[i]);
+            long perOn = (System.nanoTime() - start) / queries;
+            if (sum != 0) throw new IllegalStateException("metrics changed a result");
+            if (round >= 0) StdOut.printf("%8d %12d %12d%n", round, perOff, perOn);
+        }
+
+        wordnet.enableMetrics(metrics);
+        String[] nouns = nouns(wordnet);
+        wordnet.enableCache(10000, QueryCache.Policy.TINY_LFU);
+        for (int k : zipf(nouns.length, 2 * queries, random)) wordnet.distance(nouns[k], nouns[(k * 7919) % nouns.length]);
+        metrics.report(m -> StdOut.println(m));
+        try {
+            ObjectName name = metrics.register("benchmark");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            StdOut.printf("JMX %s: Queries %s, LatencyP99Nanos %s, CacheHitRate %s%n", name, server.getAttribute(name, "Queries"),
+                          server.getAttribute(name, "LatencyP99Nanos"), server.getAttribute(name, "CacheHitRate"));
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the noun tables WordNet used to keep, read the way it used to read them
+    private static Object[] bagTables(String synsets) {
+        LinearProbingHashST<Integer, Bag<String>> synsetsByID = new LinearProbingHashST<Integer, Bag<String>>();
+        LinearProbingHashST<String, Bag<Integer>> idsByNoun = new LinearProbingHashST<String, Bag<Integer>>();
+        In in = new In(synsets);
+        while (in.hasNextLine()) {
+            String[] parts = in.readLine().split(",");
+            int id = Integer.parseInt(parts[0]);
+            Bag<String> synset = new Bag<String>();
+            for (String noun : parts[1].split(" ")) {
+                synset.add(noun);
+                Bag<Integer> ids = idsByNoun.get(noun);
+                if (ids == null) {
+                    ids = new Bag<Integer>();
+                    idsByNoun.put(noun, ids);
+                }
+                ids.add(id);
+            }
+            synsetsByID.put(id, synset);
+        }
+        return new Object[] { synsetsByID, idsByNoun };
+    }
+
+    // milliseconds for a few full collections while the heap holds what it holds now
+    private static long fullGcMillis() {
+        long before = gcMillis();
+        for (int i = 0; i < 5; i++) System.gc();
+        return gcMillis() - before;
+    }
+
+    // the noun dictionary of a synsets file, built the way WordNet builds it
+    private static NounDictionary nounDictionary(String synsets) throws IOException {
+        NounDictionary.Builder builder = new NounDictionary.Builder();
+        CsvScanner input = CsvScanner.open(synsets);
+        CsvScanner.StringPool pool = new CsvScanner.StringPool();
+        while (input.hasNext()) {
+            builder.beginSynset(input.readInt());
+            input.skip(',');
+            do {
+                builder.addWord(input.readWord(pool));
+            } while (input.skip(' '));
+            input.skipLine();
+        }
+        return builder.build(false);
+    }
+
+    // heap footprint, full-GC time and lookup speed of the old Bag tables, of NounDictionary on the heap,
+    // and of NounDictionary in a direct buffer (whose bytes do not count as heap)
+    @SuppressWarnings("unchecked")
+    public static void dictionary(String synsets, String hypernyms) throws IOException {
+        String[] nouns = nouns(new WordNet(synsets, hypernyms));
+        long baseline = usedHeap();
+        long baseGc = fullGcMillis();
+        StdOut.printf("%-16s %12s %12s %14s%n", "tables", "heap bytes", "5 GCs ms", "ns/lookup");
+
+        Object[] tables = bagTables(synsets);
+        long heap = usedHeap() - baseline;
+        long gc = fullGcMillis() - baseGc;
+        LinearProbingHashST<String, Bag<Integer>> idsByNoun = (LinearProbingHashST<String, Bag<Integer>>) tables[1];
+        long expected = 0;
+        long start = 0;
+        for (int round = -WARMUP; round < 5; round++) {
+            if (round == 0) {
+                expected = 0;
+                start = System.nanoTime();
+            }
+            for (String noun : nouns) {
+                for (int id : idsByNoun.get(noun)) expected += id;
+            }
+        }
+        StdOut.printf("%-16s %12d %12d %14d%n", "Bag", heap, gc, (System.nanoTime() - start) / (5L * nouns.length));
+        consume(expected);
+        tables = null;
+        idsByNoun = null;
+
+        for (String mode : new String[] { "heap", "direct" }) {
+            usedHeap();
+            NounDictionary dictionary = nounDictionary(synsets);
+            if (mode.equals("direct")) dictionary = dictionary.toDirect();
+            heap = usedHeap() - baseline;
+            gc = fullGcMillis() - baseGc;
+            long sum = 0;
+            for (int round = -WARMUP; round < 5; round++) {
+                if (round == 0) {
+                    sum = 0;
+                    start = System.nanoTime();
+                }
+                for (String noun : nouns) {
+                    for (int id : dictionary.ids(dictionary.find(noun))) sum += id;
+                }
+            }
+            long perLookup = (System.nanoTime() - start) / (5L * nouns.length);
+            if (sum != expected) throw new IllegalStateException("dictionary disagrees with the Bag tables");
+            StdOut.printf("%-16s %12d %12d %14d%n", "Dictionary/" + mode, heap, gc, perLookup);
+        }
+    }
+
+    // Incremental updates to a loaded WordNet, with and without an ancestor index: microseconds per
+    // added synset (two new nouns, one or two hypernyms), per added noun, and per added hypernym edge
+    // including its cycle check, next to the milliseconds a full reload of the files takes
+    public static void update(String synsets, String hypernyms) throws IOException {
+        long start = 0;
+        for (int round = -WARMUP; round <= 0; round++) {
+            start = System.nanoTime();
+            consume(new WordNet(synsets, hypernyms).synsetCount());
+        }
+        StdOut.printf("full reload %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        Random random = new Random(42);
+        int updates = 20000;
+        int edges = 20;
+        StdOut.printf("%-8s %8s %14s %14s %14s %10s%n", "index", "round", "addSynset us", "addNoun us", "addHypernym us", "cycles");
+        for (boolean indexed : new boolean[] { false, true }) {
+            WordNet wordnet = new WordNet(synsets, hypernyms);
+            for (int round = -WARMUP; round < 3; round++) {
+                if (indexed) wordnet.buildIndex();
+                start = System.nanoTime();
+                for (int i = 0; i < updates; i++) {
+                    int V = wordnet.synsetCount();
+                    int[] parents = random.nextBoolean() ? new int[] { random.nextInt(V) }
+                                                         : new int[] { random.nextInt(V), random.nextInt(V) };
+                    wordnet.addSynset(new String[] { "new" + round + "_" + i, "also" + round + "_" + i }, parents);
+                }
+                double perSynset = (System.nanoTime() - start) / 1e3 / updates;
+
+                start = System.nanoTime();
+                for (int i = 0; i < updates; i++) wordnet.addNoun("noun" + round + "_" + i, random.nextInt(wordnet.synsetCount()));
+                double perNoun = (System.nanoTime() - start) / 1e3 / updates;
+
+                int cycles = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < edges; i++) {
+                    try {
+                        wordnet.addHypernym(random.nextInt(wordnet.synsetCount()), random.nextInt(wordnet.synsetCount()));
+                    } catch (IllegalArgumentException e) {
+                        cycles++;
+                    }
+                }
+                double perEdge = (System.nanoTime() - start) / 1e3 / edges;
+                if (round >= 0) StdOut.printf("%-8s %8d %14.2f %14.2f %14.1f %10d%n", indexed ? "yes" : "no", round, perSynset, perNoun, perEdge, cycles);
+            }
+        }
+    }
+
+    // WordNet.nearest() for growing k, against the scan it replaces: distance() from the noun to every noun
+    public static void nearest(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        String[] nouns = nouns(wordnet);
+        Random random = new Random(42);
+
+        int scans = 5;
+        long checksum = 0;
+        long start = 0;
+        for (int round = -WARMUP; round <= 0; round++) {
+            checksum = 0;
+            start = System.nanoTime();
+            for (int q = 0; q < scans; q++) {
+                String noun = nouns[random.nextInt(nouns.length)];
+                for (String other : nouns) checksum += wordnet.distance(noun, other);
+            }
+        }
+        StdOut.printf("scan of %d nouns %.1f ms/query (checksum %d)%n", nouns.length, (System.nanoTime() - start) / 1e6 / scans, checksum);
+
+        StdOut.printf("%8s %8s %14s %14s%n", "round", "k", "us/query", "ns/noun");
+        for (int round = -WARMUP; round < 3; round++) {
+            for (int k = 1; k <= 10000; k *= 10) {
+                int queries = 100000 / k;
+                long found = 0;
+                start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    for (String near : wordnet.nearest(nouns[random.nextInt(nouns.length)], k)) found++;
+                }
+                long nanos = System.nanoTime() - start;
+                consume(found);
+                if (round >= 0) StdOut.printf("%8d %8d %14.1f %14d%n", round, k, nanos / 1e3 / queries, nanos / Math.max(1, found));
+            }
+        }
+    }
+
+    // DistanceMatrix export of 1000 to 8000 random nouns to a temporary file, dense and sparse (distances
+    // up to 6), against the rate of one WordNet.distance() per pair
+    public static void matrix(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        String[] all = nouns(wordnet);
+        Random random = new Random(42);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        int pairs = 200000;
+        long start = 0;
+        long checksum = 0;
+        for (int round = -WARMUP; round <= 0; round++) {
+            checksum = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < pairs; i++) checksum += wordnet.distance(all[random.nextInt(all.length)], all[random.nextInt(all.length)]);
+        }
+        StdOut.printf("distance() %d ns/pair (checksum %d)%n", (System.nanoTime() - start) / pairs, checksum);
+
+        StdOut.printf("%8s %8s %12s %12s %14s%n", "nouns", "format", "ms", "ns/pair", "file bytes");
+        Path file = Files.createTempFile("matrix", ".bin");
+        try {
+            for (int round = 0; round < WARMUP; round++) {
+                for (String format : new String[] { "dense", "sparse" }) export(wordnet, Arrays.copyOf(all, 1000), format, file, pool);
+            }
+            for (int n = 1000; n <= 8000; n *= 2) {
+                String[] nouns = new String[n];
+                for (int i = 0; i < n; i++) nouns[i] = all[random.nextInt(all.length)];
+                for (String format : new String[] { "dense", "sparse" }) {
+                    long nanos = export(wordnet, nouns, format, file, pool);
+                    StdOut.printf("%8d %8s %12.1f %12.1f %14d%n", n, format, nanos / 1e6, (double) nanos / n / n, Files.size(file));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // nanoseconds to export the matrix of the given nouns over the file, in the given format
+    private static long export(WordNet wordnet, String[] nouns, String format, Path file, ForkJoinPool pool) throws IOException {
+        Files.deleteIfExists(file);
+        long start = System.nanoTime();
+        try (DistanceMatrix matrix = format.equals("dense") ? DistanceMatrix.dense(wordnet, nouns, file)
+                                                           : DistanceMatrix.sparse(wordnet, nouns, 6, file)) {
+            matrix.export(pool);
+        }
+        return System.nanoTime() - start;
+    }
+
+    // Load generator for WordNetServer on localhost. Each client keeps window requests in flight (SCA
+    // and DISTANCE of random nouns, and an OUTCAST of five in every twenty) and measures every request
+    // from the write of its window to the read of its response; a round runs for one second
+    public static void server(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        String[] nouns = nouns(wordnet);
+        try (WordNetServer server = new WordNetServer(wordnet, 0)) {
+            server.start();
+            for (int round = 0; round < WARMUP; round++) load(server.port(), nouns, 4, 16, 1000, false);
+            StdOut.printf("%8s %8s %14s %12s %12s %12s %10s%n", "clients", "window", "requests/s", "p50 us", "p99 us", "p99.9 us", "errors");
+            for (int window : new int[] { 1, 16 }) {
+                for (int clients = 1; clients <= 64; clients *= 2) {
+                    load(server.port(), nouns, clients, window, 1000, true);
+                }
+            }
+            StdOut.println(server);
+        }
+    }
+
+    // clients connections with window requests in flight each for millis milliseconds, printing one line if report is set
+    private static void load(int port, String[] nouns, int clients, int window, long millis, boolean report) throws IOException {
+        long[][] latencies = new long[clients][];
+        int[] counts = new int[clients];
+        int[] errors = new int[clients];
+        Thread[] threads = new Thread[clients];
+        IOException[] failure = new IOException[1];
+        long deadline = System.nanoTime() + millis * 1000000;
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            threads[c] = new Thread(() -> {
+                Random random = new Random(client);
+                long[] times = new long[1 << 12];
+                long[] sent = new long[window];
+                int count = 0;
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setTcpNoDelay(true);
+                    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    while (System.nanoTime() < deadline) {
+                        for (int i = 0; i < window; i++) {
+                            out.write(request(nouns, random));
+                            out.write('\n');
+                        }
+                        long now = System.nanoTime();
+                        Arrays.fill(sent, now);
+                        out.flush();
+                        for (int i = 0; i < window; i++) {
+                            String response = in.readLine();
+                            if (response == null) throw new IOException("server closed the connection");
+                            if (!response.startsWith("OK ")) errors[client]++;
+                            if (count == times.length) times = Arrays.copyOf(times, 2 * count);
+                            times[count++] = System.nanoTime() - sent[i];
+                        }
+                    }
+                    out.write("QUIT\n");
+                    out.flush();
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+                latencies[client] = times;
+                counts[client] = count;
+            });
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+        if (failure[0] != null) throw failure[0];
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (!report) return;
+
+        int total = 0;
+        int errorCount = 0;
+        for (int c = 0; c < clients; c++) {
+            total += counts[c];
+            errorCount += errors[c];
+        }
+        long[] all = new long[total];
+        for (int c = 0, at = 0; c < clients; at += counts[c], c++) System.arraycopy(latencies[c], 0, all, at, counts[c]);
+        Arrays.sort(all);
+        StdOut.printf("%8d %8d %14.0f %12.1f %12.1f %12.1f %10d%n", clients, window, total / seconds,
+                      all[total / 2] / 1e3, all[(int) (total * 0.99)] / 1e3, all[(int) (total * 0.999)] / 1e3, errorCount);
+    }
+
+    private static String request(String[] nouns, Random random) {
+        int kind = random.nextInt(20);
+        if (kind == 0) {
+            StringBuilder request = new StringBuilder("OUTCAST");
+            for (int i = 0; i < 5; i++) request.append(' ').append(nouns[random.nextInt(nouns.length)]);
+            return request.toString();
+        }
+        String command = kind % 2 == 0 ? "SCA " : "DISTANCE ";
+        return command + nouns[random.nextInt(nouns.length)] + " " + nouns[random.nextInt(nouns.length)];
+    }
+
+    // The ancestors of 6400 nouns, random ones and the most polysemous ones, found by one BFS per noun and by
+    // ShortestCommonAncestor.ancestorDistances(int[][]), which searches 64 nouns at a time in bit lanes
+    public static void lanes(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        ShortestCommonAncestor sca = wordnet.engine();
+        NounDictionary dictionary = wordnet.dictionary();
+        String[] nouns = nouns(wordnet);
+        int count = 6400;
+
+        int[][] random = new int[count][];
+        Random pick = new Random(42);
+        for (int i = 0; i < count; i++) random[i] = dictionary.ids(dictionary.find(nouns[pick.nextInt(nouns.length)]));
+        int[][] polysemous = new int[nouns.length][];
+        for (int i = 0; i < nouns.length; i++) polysemous[i] = dictionary.ids(dictionary.find(nouns[i]));
+        Arrays.sort(polysemous, (a, b) -> b.length - a.length);
+        polysemous = Arrays.copyOf(polysemous, count);
+
+        StdOut.printf("%8s %12s %10s %14s %14s%n", "round", "nouns", "synsets", "per-noun ms", "64-lane ms");
+        for (int round = -WARMUP; round < 5; round++) {
+            for (int[][] subsets : new int[][][] { random, polysemous }) {
+                long synsetCount = 0;
+                for (int[] subset : subsets) synsetCount += subset.length;
+                long sum = 0;
+                long start = System.nanoTime();
+                for (int[] subset : subsets) sum += sca.ancestorDistances(subset).size();
+                long single = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (AncestorDistances ancestors : sca.ancestorDistances(subsets)) sum -= ancestors.size();
+                long lanes = System.nanoTime() - start;
+                if (sum != 0) throw new IllegalStateException("bit-parallel BFS found other ancestors");
+                if (round >= 0) StdOut.printf("%8d %12s %10d %14.1f %14.1f%n", round, subsets == random ? "random" : "polysemous",
+                              synsetCount, single / 1e6, lanes / 1e6);
+            }
+        }
+    }
+
+    // WordNet against WordNet.lazy(), which leaves the synset text in the mapped file: milliseconds to
+    // load, the size of the dictionary image, and the cost of distance() and of sca(), which decodes its synset
+    public static void lazy(String synsets, String hypernyms) throws IOException {
+        String[] nouns = nouns(new WordNet(synsets, hypernyms));
+        Random random = new Random(42);
+        int pairs = 20000;
+        String[] one = new String[pairs];
+        String[] two = new String[pairs];
+        for (int i = 0; i < pairs; i++) {
+            one[i] = nouns[random.nextInt(nouns.length)];
+            two[i] = nouns[random.nextInt(nouns.length)];
+        }
+
+        StdOut.printf("%8s %8s %10s %12s %14s %14s%n", "round", "synsets", "load ms", "image bytes", "ns/distance", "ns/sca");
+        for (int round = -WARMUP; round < 3; round++) {
+            for (String mode : new String[] { "eager", "lazy" }) {
+                long start = System.nanoTime();
+                WordNet wordnet = mode.equals("lazy") ? WordNet.lazy(synsets, hypernyms) : new WordNet(synsets, hypernyms);
+                long load = System.nanoTime() - start;
+                wordnet.disableCache();
+
+                long checksum = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < pairs; i++) checksum += wordnet.distance(one[i], two[i]);
+                long distance = (System.nanoTime() - start) / pairs;
+                start = System.nanoTime();
+                for (int i = 0; i < pairs; i++) checksum += wordnet.sca(one[i], two[i]).length();
+                long sca = (System.nanoTime() - start) / pairs;
+                consume(checksum);
+                if (round < 0) continue;
+                StdOut.printf("%8d %8s %10.1f %12d %14d %14d   (checksum %d)%n",
+                              round, mode, load / 1e6, wordnet.dictionary().bytes(), distance, sca, checksum);
+                if (round == 2) StdOut.println("         " + wordnet.dictionary());
+            }
+        }
+    }
+
+    // The graph written by PackedDigraph.convert() against the CompactDigraph of the same files: build time,
+    // bytes on disk against bytes of CSR arrays, and ns per path() between random synsets for a range of
+    // block cache sizes, with ShortestCommonAncestor.path() on the heap graph for reference
+    public static void packed(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        ShortestCommonAncestor sca = wordnet.engine().withStrategy(ShortestCommonAncestor.Strategy.BFS);
+        CompactDigraph G = sca.digraph();
+        Path file = Files.createTempFile("packed", ".wnpg");
+        try {
+            long start = System.nanoTime();
+            PackedDigraph.convert(synsets, hypernyms, file);
+            long build = System.nanoTime() - start;
+            StdOut.printf("V %d, E %d: packed %d bytes in %.1f ms, CSR %d bytes%n", G.V(), G.E(),
+                          Files.size(file), build / 1e6, 4L * (G.V() + 1 + G.E()));
+
+            int queries = 100000;
+            int[] v = new int[queries];
+            int[] w = new int[queries];
+            Random random = new Random(42);
+            for (int i = 0; i < queries; i++) {
+                v[i] = random.nextInt(G.V());
+                w[i] = random.nextInt(G.V());
+            }
+            long expected = 0;
+            for (int i = 0; i < queries; i++) expected += sca.path(v[i], w[i]).length();
+
+            StdOut.printf("%8s %12s %14s%n", "round", "cache", "ns/path");
+            for (int round = -WARMUP; round < 3; round++) {
+                long sum = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < queries; i++) sum += sca.path(v[i], w[i]).length();
+                long elapsed = System.nanoTime() - start;
+                if (sum != expected) throw new IllegalStateException("path() gives other lengths");
+                if (round >= 0) StdOut.printf("%8d %12s %14d%n", round, "heap", elapsed / queries);
+                for (int blocks : new int[] { 1, 64, 1024, 4096 }) {
+                    PackedDigraph packed = PackedDigraph.open(file, blocks);
+                    sum = 0;
+                    start = System.nanoTime();
+                    for (int i = 0; i < queries; i++) sum += packed.path(v[i], w[i]).length();
+                    elapsed = System.nanoTime() - start;
+                    if (sum != expected) throw new IllegalStateException("packed digraph gives other lengths");
+                    if (round >= 0) StdOut.printf("%8d %12d %14d%n", round, blocks, elapsed / queries);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Wu-Palmer similarity of a noun to 10000 candidates, the way a client outside the library scores it
+    // (a length, an ancestor and the ancestor's distance from the root, three searches per candidate), with
+    // WordNet.similarity() and with WordNet.similarities() (one search per candidate either way)
+    public static void similarity(String synsets, String hypernyms) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        wordnet.disableCache();
+        ShortestCommonAncestor sca = wordnet.engine();
+        NounDictionary dictionary = wordnet.dictionary();
+        String[] nouns = nouns(wordnet);
+        Random random = new Random(42);
+        int count = 10000;
+        String[] candidates = new String[count];
+        for (int i = 0; i < count; i++) candidates[i] = nouns[random.nextInt(nouns.length)];
+
+        StdOut.printf("%8s %14s %16s %18s%n", "round", "3 searches ms", "similarity() ms", "similarities() ms");
+        for (int round = -WARMUP; round < 5; round++) {
+            String noun = nouns[random.nextInt(nouns.length)];
+            int[] one = dictionary.ids(dictionary.find(noun));
+            double checksum = 0;
+            long start = System.nanoTime();
+            for (String candidate : candidates) {
+                int[] two = dictionary.ids(dictionary.find(candidate));
+                int length = sca.length(one, two);
+                int ancestor = sca.ancestor(one, two);
+                int depth = sca.length(ancestor, sca.root()) + 1;
+                checksum += 2.0 * depth / (length + 2 * depth);
+            }
+            long outside = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String candidate : candidates) checksum += wordnet.similarity(noun, candidate, Similarity.WU_PALMER);
+            long single = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (double score : wordnet.similarities(noun, candidates, Similarity.WU_PALMER)) checksum += score;
+            long batch = System.nanoTime() - start;
+            consume(checksum);
+            if (round >= 0) StdOut.printf("%8d %14.1f %16.1f %18.1f   (checksum %.3f)%n", round, outside / 1e6, single / 1e6, batch / 1e6, checksum);
+        }
+    }
+
+    // Every scenario, synthetic ones first; for a before and after comparison of a change. Each runs in a
+    // JVM of its own with this JVM's flags and class path, so that the code one scenario had compiled and the
+    // garbage it left do not show up in the next one's numbers
+    public static void suite(String synsets, String hypernyms) throws IOException {
+        String[] scenarios = { "ladder", "synthetic", "construct", "distance", "alloc", "outcast", "csr",
+                               "startup", "parse", "load", "cache", "index", "metrics", "dictionary", "update",
+                               "strategy", "lanes", "nearest", "matrix", "server", "lazy", "packed", "similarity" };
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Benchmark.class.getName());
+        for (String scenario : scenarios) {
+            StdOut.println("== " + scenario);
+            ArrayList<String> run = new ArrayList<String>(command);
+            run.addAll(Arrays.asList(scenario, synsets, hypernyms));
+            try {
+                int status = new ProcessBuilder(run).inheritIO().start().waitFor();
+                if (status != 0) throw new IOException(scenario + " exited with status " + status);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String scenario = args.length > 0 ? args[0] : "ladder";
+        if (scenario.equals("ladder")) ladder();
+        else if (scenario.equals("synthetic")) synthetic();
+        else if (scenario.equals("construct")) construct(args[1], args[2]);
+        else if (scenario.equals("outcast")) outcast(args[1], args[2]);
+        else if (scenario.equals("suite")) suite(args[1], args[2]);
+        else if (scenario.equals("distance")) distance(args[1], args[2]);
+        else if (scenario.equals("alloc")) alloc(args[1], args[2]);
+        else if (scenario.equals("csr")) csr(args[1], args[2]);
+        else if (scenario.equals("startup")) startup(args[1], args[2]);
+        else if (scenario.equals("parse")) parse(args[1], args[2]);
+        else if (scenario.equals("load")) load(args[1], args[2]);
+        else if (scenario.equals("cache")) cache(args[1], args[2]);
+        else if (scenario.equals("index")) index(args[1], args[2]);
+        else if (scenario.equals("metrics")) metrics(args[1], args[2]);
+        else if (scenario.equals("dictionary")) dictionary(args[1], args[2]);
+        else if (scenario.equals("update")) update(args[1], args[2]);
+        else if (scenario.equals("nearest")) nearest(args[1], args[2]);
+        else if (scenario.equals("matrix")) matrix(args[1], args[2]);
+        else if (scenario.equals("server")) server(args[1], args[2]);
+        else if (scenario.equals("strategy")) strategy(args[1], args[2]);
+        else if (scenario.equals("lanes")) lanes(args[1], args[2]);
+        else if (scenario.equals("lazy")) lazy(args[1], args[2]);
+        else if (scenario.equals("packed")) packed(args[1], args[2]);
+        else if (scenario.equals("similarity")) similarity(args[1], args[2]);
+        else throw new IllegalArgumentException("unknown scenario: " + scenario);
+    }
+}
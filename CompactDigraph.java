@@ -0,0 +1,284 @@
+/*
+CompactDigraph is an immutable digraph in compressed sparse row (CSR) form.
+The vertices adjacent to v are targets[offsets[v]] to targets[offsets[v + 1] - 1],
+so the whole graph is two int arrays: no Bag nodes, no boxed Integers, and an
+adjacency scan reads consecutive memory.
+
+It is built once, either from an algs4 Digraph or from a list of edges, and
+is what ShortestCommonAncestor traverses. A digraph never changes, but
+withVertex() and withEdges() return a new one with vertices or edges added.
+withVertex() appends to the same arrays when it can (they are allocated with
+room to spare, and no older digraph ever reads past its own V and E), so a
+long run of added vertices costs amortized O(outdegree) each. withEdges()
+copies the arrays in blocks, and turns around the reverse along with them if
+it has been built, so descendants() does not have to build it again.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import edu.princeton.cs.algs4.Digraph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class CompactDigraph {
+    private final int V;
+    private final int E;
+    private final int[] offsets;   // offsets[v] is where the adjacency list of v starts in targets, offsets[V] == E
+    private final int[] targets;   // adjacency lists of all vertices, back to back, in targets[0..E)
+    private final int[] tail;      // {V, E} of the newest digraph over these arrays, the only one that may append
+    private volatile CompactDigraph reverse;   // built by reverse() the first time it is asked for
+
+    // copy of an algs4 digraph, keeping its adjacency order
+    public CompactDigraph(Digraph G) {
+        V = G.V();
+        offsets = new int[V + 1];
+        targets = new int[G.E()];
+        int e = 0;
+        for (int v = 0; v < V; v++) {
+            offsets[v] = e;
+            for (int w : G.adj(v)) targets[e++] = w;
+        }
+        offsets[V] = e;
+        E = e;
+        tail = new int[] { V, E };
+    }
+
+    // digraph on V vertices with the E edges from[i]->to[i]; edges leaving the same vertex keep their order
+    public CompactDigraph(int V, int[] from, int[] to, int E) {
+        if (V < 0) throw new IllegalArgumentException("Number of vertices must be nonnegative");
+        this.V = V;
+        this.E = E;
+        offsets = new int[V + 1];
+        targets = new int[E];
+        tail = new int[] { V, E };
+
+        // counting sort of the edges by source vertex
+        for (int i = 0; i < E; i++) {
+            validateVertex(from[i]);
+            validateVertex(to[i]);
+            offsets[from[i] + 1]++;
+        }
+        for (int v = 0; v < V; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, V);
+        for (int i = 0; i < E; i++) {
+            targets[next[from[i]]++] = to[i];
+        }
+    }
+
+    // digraph over existing CSR arrays, e.g. read back from a snapshot; the arrays are shared, not copied
+    CompactDigraph(int[] offsets, int[] targets) {
+        V = offsets.length - 1;
+        if (V < 0 || offsets[0] != 0 || offsets[V] != targets.length) throw new IllegalArgumentException("malformed offsets");
+        for (int v = 0; v < V; v++) {
+            if (offsets[v] > offsets[v + 1]) throw new IllegalArgumentException("malformed offsets");
+        }
+        for (int target : targets) validateVertex(target);
+        this.offsets = offsets;
+        this.targets = targets;
+        E = targets.length;
+        tail = new int[] { V, E };
+    }
+
+    private CompactDigraph(int V, int E, int[] offsets, int[] targets, int[] tail) {
+        this.V = V;
+        this.E = E;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.tail = tail;
+    }
+
+    // this digraph plus a new vertex V with edges to parents, in that order
+    public CompactDigraph withVertex(int... parents) {
+        for (int parent : parents) validateVertex(parent);
+        synchronized (tail) {
+            int[] o = offsets;
+            int[] t = targets;
+            int[] shared = tail;
+            if (tail[0] != V || tail[1] != E || V + 2 > o.length || E + parents.length > t.length) {
+                // someone else has appended past this digraph, or the arrays are full: move to new ones
+                o = Arrays.copyOf(offsets, Math.max(V + 2, V + (V >> 1) + 16));
+                t = Arrays.copyOf(targets, Math.max(E + parents.length, E + (E >> 1) + 16));
+                shared = new int[] { V, E };
+            }
+            System.arraycopy(parents, 0, t, E, parents.length);
+            o[V + 1] = E + parents.length;
+            shared[0] = V + 1;
+            shared[1] = E + parents.length;
+            return new CompactDigraph(V + 1, E + parents.length, o, t, shared);
+        }
+    }
+
+    // this digraph plus the edges from[i]->to[i], i < count, each after the edges its source already has.
+    // Copies both arrays, and those of the reverse if it has been built, so it costs O(V + E); add a batch
+    // of edges with one call
+    public CompactDigraph withEdges(int[] from, int[] to, int count) {
+        CompactDigraph G = plus(from, to, count);
+
+        // the reverse gains the same edges turned around, so it is kept up to date rather than built again
+        CompactDigraph R = reverse;
+        if (R != null) {
+            CompactDigraph turned = R.plus(to, from, count);
+            turned.reverse = G;
+            G.reverse = turned;
+        }
+        return G;
+    }
+
+    // withEdges() without the reverse
+    private CompactDigraph plus(int[] from, int[] to, int count) {
+        // the new edges in order of source, and of position in the batch within a source
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            validateVertex(from[i]);
+            validateVertex(to[i]);
+            order[i] = ((long) from[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        // every list moves up by the number of new edges leaving vertices before it
+        int[] o = new int[V + 1];
+        for (int v = 0, k = 0; v <= V; v++) {
+            while (k < count && (int) (order[k] >>> 32) < v) k++;
+            o[v] = offsets[v] + k;
+        }
+
+        // copy the old edges in blocks, each ending with a source that gains edges
+        int[] t = new int[E + count];
+        int copied = 0;
+        int k = 0;
+        while (k < count) {
+            int source = (int) (order[k] >>> 32);
+            int end = offsets[source + 1];
+            System.arraycopy(targets, copied, t, copied + k, end - copied);
+            copied = end;
+            for (; k < count && (int) (order[k] >>> 32) == source; k++) t[end + k] = to[(int) order[k]];
+        }
+        System.arraycopy(targets, copied, t, copied + count, E - copied);
+        return new CompactDigraph(V, E + count, o, t, new int[] { V, E + count });
+    }
+
+    // number of vertices
+    public int V() {
+        return V;
+    }
+
+    // number of edges
+    public int E() {
+        return E;
+    }
+
+    // the digraph with every edge turned around, built on first use and kept; the edges into v come out
+    // in the order of their sources, followed by any added with withEdges() in the order they were added
+    public CompactDigraph reverse() {
+        CompactDigraph R = reverse;
+        if (R == null) {
+            int[] from = new int[E];
+            for (int v = 0; v < V; v++) {
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) from[e] = v;
+            }
+            R = new CompactDigraph(V, targets, from, E);
+            R.reverse = this;
+            reverse = R;
+        }
+        return R;
+    }
+
+    // number of edges leaving v
+    public int outdegree(int v) {
+        validateVertex(v);
+        return offsets[v + 1] - offsets[v];
+    }
+
+    // the vertices adjacent from v; allocates, so hot loops should read offsets() and targets() instead
+    public Iterable<Integer> adj(int v) {
+        validateVertex(v);
+        Integer[] adjacent = new Integer[offsets[v + 1] - offsets[v]];
+        for (int i = 0; i < adjacent.length; i++) {
+            adjacent[i] = targets[offsets[v] + i];
+        }
+        return Arrays.asList(adjacent);
+    }
+
+    // v and every vertex with a path to v, each after every vertex it has an edge to among them: in a
+    // hypernym DAG, a synset and its hyponyms down to the leaves, each after its hypernyms. One depth-first
+    // search of reverse() from v, in time proportional to the vertices listed and their edges once the
+    // reverse is built; the digraph must be acyclic
+    public int[] descendants(int v) {
+        validateVertex(v);
+        CompactDigraph R = reverse();
+        int[] rOffsets = R.offsets;
+        int[] rTargets = R.targets;
+        BitSet seen = new BitSet();
+        int[] stack = new int[16];     // vertices on the search path
+        int[] next = new int[16];      // next[k] is the next edge of stack[k] to follow
+        int[] finished = new int[16];  // vertices in the order their search finished
+        seen.set(v);
+        stack[0] = v;
+        next[0] = rOffsets[v];
+        int depth = 1;
+        int count = 0;
+        while (depth > 0) {
+            int u = stack[depth - 1];
+            if (next[depth - 1] == rOffsets[u + 1]) {
+                if (count == finished.length) finished = Arrays.copyOf(finished, 2 * count);
+                finished[count++] = u;
+                depth--;
+                continue;
+            }
+            int w = rTargets[next[depth - 1]++];
+            if (seen.get(w)) continue;
+            seen.set(w);
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, 2 * depth);
+                next = Arrays.copyOf(next, 2 * depth);
+            }
+            stack[depth] = w;
+            next[depth++] = rOffsets[w];
+        }
+
+        // a vertex finishes after everything below it, so the reverse finishing order puts it first
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = finished[count - 1 - i];
+        return order;
+    }
+
+    // the vertices in a topological order (every edge points from an earlier to a later vertex),
+    // or null if the digraph has a cycle
+    public int[] topologicalOrder() {
+        int[] indegree = new int[V];
+        for (int e = 0; e < E; e++) indegree[targets[e]]++;
+
+        // Kahn's algorithm, using the order array itself as the queue
+        int[] order = new int[V];
+        int head = 0;
+        int tail = 0;
+        for (int v = 0; v < V; v++) {
+            if (indegree[v] == 0) order[tail++] = v;
+        }
+        while (head < tail) {
+            int v = order[head++];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (--indegree[targets[i]] == 0) order[tail++] = targets[i];
+            }
+        }
+        return tail == V ? order : null;
+    }
+
+    // the backing arrays, shared rather than copied; callers must not modify them. They may be longer
+    // than the digraph: only offsets[0..V] and targets[0..E) belong to it
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= V) throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (V - 1));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+CsvScanner reads the comma separated WordNet input files straight from a
+ByteBuffer, usually a memory-mapped file. Integers are parsed from the bytes
+in place and words are only turned into Strings through a StringPool, which
+hands back the same String every time the same word is read. Reading a line
+therefore allocates nothing unless it contains a word not seen before.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class CsvScanner {
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+
+    // scans buffer from its position to its limit, the buffer's own position is left alone
+    public CsvScanner(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+    }
+
+    // a scanner over the whole of a file, which is mapped rather than read
+    public static CsvScanner open(String file) throws IOException {
+        return new CsvScanner(map(file));
+    }
+
+    // the contents of a file as a read-only memory-mapped buffer
+    public static ByteBuffer map(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // offset of the next byte to read, in the buffer's own indexing
+    public int position() {
+        return position;
+    }
+
+    // is there anything left to read?
+    public boolean hasNext() {
+        return position < limit;
+    }
+
+    // is the next byte the end of a field: a comma, a line break or the end of input?
+    public boolean atFieldEnd() {
+        if (position >= limit) return true;
+        byte b = buffer.get(position);
+        return b == ',' || b == '\n' || b == '\r';
+    }
+
+    // consume the next byte if it is c
+    public boolean skip(char c) {
+        if (position < limit && buffer.get(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    // consume everything up to and including the next line break
+    public void skipLine() {
+        while (position < limit && buffer.get(position++) != '\n') { }
+    }
+
+    // a nonnegative decimal integer
+    public int readInt() {
+        int start = position;
+        int value = 0;
+        while (position < limit) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) break;
+            value = 10 * value + digit;
+            position++;
+        }
+        if (position == start) throw new NumberFormatException("expected a number at byte " + start);
+        return value;
+    }
+
+    // the bytes up to the next space, comma or line break, as a pooled String
+    public String readWord(StringPool pool) {
+        int start = position;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b == ' ' || b == ',' || b == '\n' || b == '\r') break;
+            position++;
+        }
+        return pool.get(buffer, start, position);
+    }
+
+    // Open-addressing set of Strings that can be probed with a range of UTF-8 bytes, so that a word
+    // already in the pool is found without creating a String for it first. Not thread-safe.
+    public static class StringPool {
+        private String[] strings = new String[1024];
+        private int[] hashes = new int[1024];
+        private int size;
+        private byte[] scratch = new byte[64];
+
+        // number of distinct Strings in the pool
+        public int size() {
+            return size;
+        }
+
+        // the pooled String for bytes [start, end) of buffer, decoded as UTF-8
+        public String get(ByteBuffer buffer, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) hash = 31 * hash + buffer.get(i);
+            hash ^= hash >>> 16;
+
+            int mask = strings.length - 1;
+            for (int slot = hash & mask; strings[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && matches(strings[slot], buffer, start, end)) return strings[slot];
+            }
+
+            String s = decode(buffer, start, end);
+            if (2 * (size + 1) > strings.length) resize();
+            mask = strings.length - 1;
+            int slot = hash & mask;
+            while (strings[slot] != null) slot = (slot + 1) & mask;
+            strings[slot] = s;
+            hashes[slot] = hash;
+            size++;
+            return s;
+        }
+
+        // does s encode to exactly bytes [start, end)?
+        private boolean matches(String s, ByteBuffer buffer, int start, int end) {
+            if (s.length() != end - start) {
+                // only a String with non-ASCII characters can be shorter than its UTF-8 bytes
+                return s.length() < end - start && s.equals(decode(buffer, start, end));
+            }
+            for (int i = start; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b < 0) return s.equals(decode(buffer, start, end));
+                if (s.charAt(i - start) != b) return false;
+            }
+            return true;
+        }
+
+        private String decode(ByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            if (length > scratch.length) scratch = new byte[Math.max(length, 2 * scratch.length)];
+            for (int i = 0; i < length; i++) scratch[i] = buffer.get(start + i);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void resize() {
+            String[] oldStrings = strings;
+            int[] oldHashes = hashes;
+            strings = new String[2 * oldStrings.length];
+            hashes = new int[2 * oldStrings.length];
+            int mask = strings.length - 1;
+            for (int i = 0; i < oldStrings.length; i++) {
+                if (oldStrings[i] == null) continue;
+                int slot = oldHashes[i] & mask;
+                while (strings[slot] != null) slot = (slot + 1) & mask;
+                strings[slot] = oldStrings[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+DistanceMatrix computes distance(nouns[i], nouns[j]) for every pair in a list
+of nouns and streams the results to a file, for analytics jobs that need
+millions of distances at once.
+
+Each noun's ancestors are found once, by one upward BFS. A row marks the
+ancestors of its noun with their distances in an array over the synsets,
+and every entry of the row is then one pass over the other noun's list,
+looking each ancestor up: no search, and no merge of two lists. Rows are
+computed in bands of rows in parallel on a fork-join pool and written out
+band by band, so the heap holds the ancestor lists and one band, never the
+matrix.
+
+The file is either dense, a short for every pair, or sparse, only the pairs
+no farther apart than a threshold. Its layout, all big-endian:
+
+    header    magic, version, format (0 dense, 1 sparse), n, threshold,
+              V of the graph, fingerprint of the nouns and the graph (long),
+              committed (long: where the data written so far ends),
+              done (n bits in longs: rows that are complete)
+    dense     row i at data + 2 n i: n shorts, -1 where two nouns have no
+              common ancestor
+    sparse    one record per row, in the order rows were finished: row,
+              count, count ascending column numbers, count shorts; the
+              diagonal and pairs without a common ancestor are left out
+
+A band's rows are forced to disk, then the committed offset, and only then
+are their bits set in the header, so after an interruption export() picks
+up with the rows that are not marked done, and a sparse file is written on
+from the committed offset, over whatever a half-finished band left behind.
+Opening a sparse file checks that every row marked done has a record below
+the committed offset. export(pool, from, to) computes
+just a range of rows, so a long job can be split up or resumed in pieces.
+The file belongs to one DistanceMatrix at a time.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class DistanceMatrix implements Closeable {
+    public static final int NONE = -1;          // distance of two nouns without a common ancestor, or not stored
+    private static final int MAGIC = 0x574E444D;        // "WNDM"
+    private static final int VERSION = 1;
+    private static final int DENSE = 0;
+    private static final int SPARSE = 1;
+    private static final int BAND_BYTES = 16 << 20;     // about how much of the matrix is held at once
+    private static final int DONE_AT = 40;              // the done bits follow the fixed part of the header
+
+    private final FileChannel channel;
+    private final int format;
+    private final int n;
+    private final int threshold;
+    private final long data;            // where the rows start
+    private final long[] done;          // copy of the done bits in the header
+    private long committed;             // end of the committed data
+    private long[] recordAt;            // sparse: where the record of each done row starts, found on open or first read
+
+    private final WordNet wordnet;      // null when opened for reading only
+    private final String[] nouns;
+    private AncestorDistances[] reach;  // ancestors of every noun, computed on first export
+    private ThreadLocal<int[]> marks;   // per thread, distance + 1 from the noun of a row to each synset, or 0
+
+    // A dense matrix of the distances between nouns, in file, which is created, or resumed if it already
+    // holds a matrix of the same nouns on the same graph. Nothing is computed until export()
+    public static DistanceMatrix dense(WordNet wordnet, String[] nouns, Path file) throws IOException {
+        return new DistanceMatrix(wordnet, nouns, file, DENSE, Short.MAX_VALUE);
+    }
+
+    // the same, keeping only distances of at most threshold, in the sparse format
+    public static DistanceMatrix sparse(WordNet wordnet, String[] nouns, int threshold, Path file) throws IOException {
+        if (threshold < 0 || threshold > Short.MAX_VALUE) throw new IllegalArgumentException("threshold " + threshold);
+        return new DistanceMatrix(wordnet, nouns, file, SPARSE, threshold);
+    }
+
+    // a matrix file written earlier, to read rows from; export() is not available
+    public static DistanceMatrix open(Path file) throws IOException {
+        return new DistanceMatrix(file);
+    }
+
+    private DistanceMatrix(WordNet wordnet, String[] nouns, Path file, int format, int threshold) throws IOException {
+        if (wordnet == null || nouns == null || file == null) throw new NullPointerException();
+        for (String noun : nouns) {
+            if (noun == null) throw new NullPointerException();
+            if (!wordnet.isNoun(noun)) throw new IllegalArgumentException(noun + " is not a WordNet noun");
+        }
+        this.wordnet = wordnet;
+        this.nouns = nouns.clone();
+        this.format = format;
+        this.threshold = threshold;
+        n = nouns.length;
+        done = new long[(n + 63) >>> 6];
+        data = DONE_AT + 8L * done.length;
+        int V = wordnet.synsetCount();
+        long fingerprint = fingerprint(this.nouns, V, wordnet.engine().digraph().E());
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                committed = format == DENSE ? data + 2L * n * n : data;
+                ByteBuffer header = ByteBuffer.allocate((int) data);
+                header.putInt(MAGIC).putInt(VERSION).putInt(format).putInt(n).putInt(threshold).putInt(V)
+                      .putLong(fingerprint).putLong(committed);
+                write(header.clear(), 0);
+                channel.force(true);
+            } else {
+                ByteBuffer header = readHeader(file);
+                if (header.getInt(8) != format || header.getInt(12) != n || header.getInt(16) != threshold
+                        || header.getInt(20) != V || header.getLong(24) != fingerprint) {
+                    throw new IOException(file + " holds a different matrix");
+                }
+                if (format == SPARSE) {
+                    checkRecords(file);
+                    channel.truncate(committed);     // drop a band that was cut short
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private DistanceMatrix(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer fixed = ByteBuffer.allocate(DONE_AT);
+            read(fixed, 0);
+            if (fixed.getInt(0) != MAGIC) throw new IOException(file + " is not a distance matrix");
+            format = fixed.getInt(8);
+            n = fixed.getInt(12);
+            threshold = fixed.getInt(16);
+            done = new long[(n + 63) >>> 6];
+            data = DONE_AT + 8L * done.length;
+            readHeader(file);
+            if (format == SPARSE) checkRecords(file);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        wordnet = null;
+        nouns = null;
+    }
+
+    // check the fixed part of the header and load the done bits and the committed offset
+    private ByteBuffer readHeader(Path file) throws IOException {
+        if (channel.size() < data) throw new IOException(file + " is truncated");
+        ByteBuffer header = ByteBuffer.allocate((int) data);
+        read(header, 0);
+        if (header.getInt(0) != MAGIC) throw new IOException(file + " is not a distance matrix");
+        if (header.getInt(4) != VERSION) throw new IOException(file + " has version " + header.getInt(4) + ", expected " + VERSION);
+        committed = header.getLong(32);
+        if (committed < data || (format == SPARSE && committed > channel.size())) throw new IOException(file + " is corrupt: committed offset " + committed);
+        header.position(DONE_AT);
+        header.asLongBuffer().get(done);
+        return header;
+    }
+
+    // number of nouns, and of rows and columns
+    public int size() {
+        return n;
+    }
+
+    public boolean isDense() {
+        return format == DENSE;
+    }
+
+    // the largest distance a sparse matrix keeps
+    public int threshold() {
+        return threshold;
+    }
+
+    // has row i been computed and committed?
+    public synchronized boolean isDone(int i) {
+        checkRow(i);
+        return (done[i >>> 6] & (1L << i)) != 0;
+    }
+
+    // number of rows computed and committed
+    public synchronized int rowsDone() {
+        int rows = 0;
+        for (long bits : done) rows += Long.bitCount(bits);
+        return rows;
+    }
+
+    // compute every row that is not done yet
+    public void export(ForkJoinPool pool) throws IOException {
+        export(pool, 0, n);
+    }
+
+    // compute the rows from .. to - 1 that are not done yet, a band at a time on pool
+    public synchronized void export(ForkJoinPool pool, int from, int to) throws IOException {
+        if (pool == null) throw new NullPointerException();
+        if (wordnet == null) throw new IllegalStateException("opened for reading only");
+        if (from < 0 || to > n || from > to) throw new IndexOutOfBoundsException("rows " + from + " to " + to);
+        if (reach == null) {
+            reach = ancestors(pool);
+            int V = wordnet.synsetCount();
+            marks = ThreadLocal.withInitial(() -> new int[V]);
+        }
+
+        int bandRows = Math.max(pool.getParallelism(), BAND_BYTES / Math.max(1, 2 * n));
+        int[] band = new int[bandRows];
+        int row = from;
+        while (row < to) {
+            int rows = 0;
+            for (; row < to && rows < bandRows; row++) {
+                if ((done[row >>> 6] & (1L << row)) == 0) band[rows++] = row;
+            }
+            if (rows > 0) writeBand(pool, Arrays.copyOf(band, rows));
+        }
+    }
+
+    // every noun's ancestors with their distances, computed in parallel
+    private AncestorDistances[] ancestors(ForkJoinPool pool) {
+        AncestorDistances[] all = new AncestorDistances[n];
+        int chunk = Math.max(64, n / (4 * pool.getParallelism()) + 1);
+        pool.invoke(ForkJoinTask.adapt(() -> {
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int start = 0; start < n; start += chunk) {
+                int first = start;
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    int end = Math.min(n, first + chunk);
+                    System.arraycopy(wordnet.ancestorDistances(Arrays.copyOfRange(nouns, first, end)), 0, all, first, end - first);
+                }).fork());
+            }
+            for (ForkJoinTask<?> task : tasks) task.join();
+        }));
+        return all;
+    }
+
+    // compute rows in parallel, write them, and once they are on disk mark them done
+    private void writeBand(ForkJoinPool pool, int[] rows) throws IOException {
+        ByteBuffer[] out = pool.invoke(ForkJoinTask.adapt(() -> {
+            ArrayList<ForkJoinTask<ByteBuffer>> tasks = new ArrayList<ForkJoinTask<ByteBuffer>>();
+            for (int row : rows) tasks.add(ForkJoinTask.adapt(() -> format == DENSE ? denseRow(row) : sparseRow(row)).fork());
+            ByteBuffer[] computed = new ByteBuffer[rows.length];
+            for (int k = 0; k < rows.length; k++) computed[k] = tasks.get(k).join();
+            return computed;
+        }));
+
+        for (int k = 0; k < rows.length; k++) {
+            if (format == DENSE) {
+                write(out[k], data + 2L * n * rows[k]);
+            } else {
+                if (recordAt != null) recordAt[rows[k]] = committed;
+                long length = out[k].remaining();
+                write(out[k], committed);
+                committed += length;
+            }
+        }
+        channel.force(false);
+
+        // then the committed offset, so that a row is never marked done before its data is safe and committed.
+        // A crash after this and before the bits leaves committed rows that are not done; they are computed
+        // again on resume and their new records win
+        if (format == SPARSE) {
+            write(ByteBuffer.allocate(8).putLong(0, committed), 32);
+            channel.force(false);
+        }
+
+        // and last the done bits
+        int firstWord = rows[0] >>> 6;
+        int lastWord = rows[rows.length - 1] >>> 6;
+        for (int row : rows) done[row >>> 6] |= 1L << row;
+        ByteBuffer bits = ByteBuffer.allocate(8 * (lastWord - firstWord + 1));
+        for (int word = firstWord; word <= lastWord; word++) bits.putLong(done[word]);
+        write(bits.clear(), DONE_AT + 8L * firstWord);
+        channel.force(false);
+    }
+
+    // row i of the dense matrix, as n shorts
+    private ByteBuffer denseRow(int i) {
+        int[] distances = row(i);
+        ByteBuffer row = ByteBuffer.allocate(2 * n);
+        for (int j = 0; j < n; j++) row.putShort(2 * j, (short) distances[j]);
+        return row;
+    }
+
+    // row i of the sparse matrix, as a record
+    private ByteBuffer sparseRow(int i) {
+        int[] distances = row(i);
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            if (j != i && distances[j] != NONE && distances[j] <= threshold) count++;
+        }
+        ByteBuffer record = ByteBuffer.allocate(8 + 6 * count);
+        record.putInt(i).putInt(count);
+        for (int j = 0; j < n; j++) {
+            if (j != i && distances[j] != NONE && distances[j] <= threshold) record.putInt(j);
+        }
+        for (int j = 0; j < n; j++) {
+            if (j != i && distances[j] != NONE && distances[j] <= threshold) record.putShort((short) distances[j]);
+        }
+        return record.clear();
+    }
+
+    // distance from noun i to every noun, NONE where there is no common ancestor
+    private int[] row(int i) {
+        int[] mark = marks.get();
+        AncestorDistances from = reach[i];
+        for (int k = 0; k < from.size(); k++) mark[from.vertex(k)] = from.distance(k) + 1;
+
+        int[] distances = new int[n];
+        for (int j = 0; j < n; j++) {
+            AncestorDistances to = reach[j];
+            int shortest = Integer.MAX_VALUE;
+            for (int k = 0; k < to.size(); k++) {
+                int m = mark[to.vertex(k)];
+                if (m != 0 && m + to.distance(k) < shortest) shortest = m + to.distance(k);
+            }
+            if (shortest == Integer.MAX_VALUE) distances[j] = NONE;
+            else if (shortest - 1 > Short.MAX_VALUE) throw new IllegalStateException("distance " + (shortest - 1) + " does not fit the matrix");
+            else distances[j] = shortest - 1;
+        }
+
+        for (int k = 0; k < from.size(); k++) mark[from.vertex(k)] = 0;
+        return distances;
+    }
+
+    // distance between nouns i and j as stored; NONE if they have no common ancestor or, in a sparse
+    // matrix, are farther apart than the threshold. Row i must be done
+    public synchronized int distance(int i, int j) throws IOException {
+        checkRow(i);
+        checkRow(j);
+        if ((done[i >>> 6] & (1L << i)) == 0) throw new IllegalStateException("row " + i + " has not been exported");
+        if (format == DENSE) {
+            ByteBuffer entry = ByteBuffer.allocate(2);
+            read(entry, data + 2L * n * i + 2L * j);
+            return entry.getShort(0);
+        }
+        if (i == j) return 0;
+        if (recordAt == null) recordAt = recordOffsets();
+        long at = recordAt[i];
+        ByteBuffer count = ByteBuffer.allocate(8);
+        read(count, at);
+        int entries = count.getInt(4);
+        ByteBuffer columns = ByteBuffer.allocate(4 * entries);
+        read(columns, at + 8);
+        int k = Arrays.binarySearch(readInts(columns, entries), j);
+        if (k < 0) return NONE;
+        ByteBuffer d = ByteBuffer.allocate(2);
+        read(d, at + 8 + 4L * entries + 2L * k);
+        return d.getShort(0);
+    }
+
+    // where each committed record of a sparse file starts; a row written twice keeps its last record
+    private long[] recordOffsets() throws IOException {
+        long[] offsets = new long[n];
+        ByteBuffer head = ByteBuffer.allocate(8);
+        for (long at = data; at < committed; ) {
+            head.clear();
+            read(head, at);
+            int row = head.getInt(0);
+            int count = head.getInt(4);
+            if (row < 0 || row >= n || count < 0 || at + 8 + 6L * count > committed) {
+                throw new IOException("distance matrix is corrupt: bad record at " + at);
+            }
+            offsets[row] = at;
+            at += 8 + 6L * count;
+        }
+        return offsets;
+    }
+
+    // a sparse file must have a committed record for every row marked done; the offsets are kept for distance()
+    private void checkRecords(Path file) throws IOException {
+        long[] offsets = recordOffsets();
+        for (int row = 0; row < n; row++) {
+            if ((done[row >>> 6] & (1L << row)) != 0 && offsets[row] == 0) {
+                throw new IOException(file + " is corrupt: row " + row + " is marked done but has no record");
+            }
+        }
+        recordAt = offsets;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] ints = new int[count];
+        buffer.clear();
+        buffer.asIntBuffer().get(ints);
+        return ints;
+    }
+
+    private void checkRow(int i) {
+        if (i < 0 || i >= n) throw new IndexOutOfBoundsException("row " + i + " is not between 0 and " + (n - 1));
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("distance matrix is truncated");
+            position += read;
+        }
+    }
+
+    // identifies the nouns, in order, and the graph they were measured on
+    private static long fingerprint(String[] nouns, int V, int E) {
+        long hash = 31L * V + E;
+        for (String noun : nouns) hash = 1000003 * hash + noun.hashCode();
+        return hash;
+    }
+
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    public String toString() {
+        return String.format("DistanceMatrix: %d nouns, %s, %d of %d rows done",
+                             n, format == DENSE ? "dense" : "sparse, distances up to " + threshold, rowsDone(), n);
+    }
+}
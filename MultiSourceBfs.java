@@ -0,0 +1,174 @@
+/*
+MultiSourceBfs finds the ancestors of up to 64 vertex subsets in one upward
+BFS. Every vertex carries a long with one bit, or lane, per subset: bit i is
+set once the vertex has been reached from subset i. The search advances all
+lanes a level at a time, and a vertex whose parents are scanned passes every
+lane that reached it at that level on to them with one AND and one OR. So
+an edge is scanned at most once per level for all 64 subsets together,
+where 64 separate BFSs would scan it once each, and the ancestors that
+nouns have in common, the upper levels of WordNet above all, are searched
+once per batch instead of once per noun.
+
+The result is one AncestorDistances per subset, exactly what
+ShortestCommonAncestor.ancestorDistances() returns for it alone. Handing the
+ancestors out costs one write per (ancestor, subset) pair however they were
+found, so the saving is in the search: on WordNet, 64 random nouns reach
+about a third fewer vertices together than they do one at a time.
+
+The lanes are plain longs. Wider words would need the incubating Vector API,
+which is not part of a standard build.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.util.Arrays;
+
+public class MultiSourceBfs {
+    public static final int LANES = 64;             // subsets searched together, one bit each
+
+    private final long[] reached;   // reached[v] has bit i set if v has been reached from subset i
+    private final long[] frontier;  // lanes that reached v at the level being expanded
+    private final long[] next;      // lanes that reached v at the level after it
+    private final int[] current;    // vertices with frontier bits, current[0..currentSize)
+    private final int[] following;  // vertices with next bits
+    private final long[] marked;    // bit v % 64 of marked[v / 64] is set if v has been reached at all
+
+    // Every time lanes reach a vertex at a new level, that is an event. firstEvent[v] - 1 is the latest
+    // event at v and eventNext[k] - 1 the one before event k, so the events of a vertex form a list (0 ends it)
+    private final int[] firstEvent;
+    private int[] eventNext = new int[256];
+    private long[] eventLanes = new long[256];
+    private int[] eventLevel = new int[256];
+    private int events;
+
+    // every lane's ancestors as they are handed out, reused from one search to the next
+    private final int[][] laneVertices = new int[LANES][];
+    private final int[][] laneDistances = new int[LANES][];
+    private final int[] laneSize = new int[LANES];
+
+    // scratch space for digraphs of up to capacity vertices; not thread-safe, so one per thread
+    public MultiSourceBfs(int capacity) {
+        reached = new long[capacity];
+        frontier = new long[capacity];
+        next = new long[capacity];
+        current = new int[capacity];
+        following = new int[capacity];
+        marked = new long[(capacity + 63) >>> 6];
+        firstEvent = new int[capacity];
+        for (int i = 0; i < LANES; i++) {
+            laneVertices[i] = new int[64];
+            laneDistances[i] = new int[64];
+        }
+    }
+
+    // the largest digraph this can search
+    public int capacity() {
+        return reached.length;
+    }
+
+    // every ancestor of each of subsets[first..first + count) (the subset included), with its distance from
+    // the subset, searching G upward; count is at most LANES and every subset nonempty
+    public AncestorDistances[] search(CompactDigraph G, int[][] subsets, int first, int count) {
+        if (count > LANES) throw new IllegalArgumentException(count + " subsets, at most " + LANES + " can be searched together");
+        if (G.V() > capacity()) throw new IllegalArgumentException("digraph has " + G.V() + " vertices, room for " + capacity());
+        for (int i = 0; i < count; i++) {
+            if (subsets[first + i].length == 0) throw new IllegalArgumentException("subset " + (first + i) + " is empty");
+            for (int s : subsets[first + i]) {
+                if (s < 0 || s >= G.V()) throw new IndexOutOfBoundsException("vertex " + s);
+            }
+        }
+        int[] offsets = G.offsets();
+        int[] targets = G.targets();
+
+        // level 0: every subset's own vertices
+        int currentSize = 0;
+        for (int i = 0; i < count; i++) {
+            long lane = 1L << i;
+            for (int s : subsets[first + i]) {
+                if (frontier[s] == 0) current[currentSize++] = s;
+                reached[s] |= lane;
+                frontier[s] |= lane;
+            }
+        }
+        for (int k = 0; k < currentSize; k++) event(current[k], frontier[current[k]], 0);
+
+        // every later level: the lanes new at a vertex go on to each of its parents that they have not reached
+        for (int d = 1; currentSize > 0; d++) {
+            int followingSize = 0;
+            for (int k = 0; k < currentSize; k++) {
+                int v = current[k];
+                long lanes = frontier[v];
+                frontier[v] = 0;
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int parent = targets[e];
+                    long added = lanes & ~reached[parent];
+                    if (added == 0) continue;
+                    if (next[parent] == 0) following[followingSize++] = parent;
+                    reached[parent] |= added;
+                    next[parent] |= added;
+                }
+            }
+            for (int k = 0; k < followingSize; k++) {
+                int v = following[k];
+                frontier[v] = next[v];
+                next[v] = 0;
+                current[k] = v;
+                event(v, frontier[v], d);
+            }
+            currentSize = followingSize;
+        }
+        return ancestors(count);
+    }
+
+    // Hand the events out to the lanes. The reached vertices come out of marked in ascending order, which
+    // is the order AncestorDistances wants, so nothing is sorted; the search state is cleared on the way
+    private AncestorDistances[] ancestors(int count) {
+        for (int word = 0; word < marked.length; word++) {
+            for (long bits = marked[word]; bits != 0; bits &= bits - 1) {
+                int v = word << 6 | Long.numberOfTrailingZeros(bits);
+                for (int k = firstEvent[v] - 1; k != -1; k = eventNext[k] - 1) {
+                    int d = eventLevel[k];
+                    for (long lanes = eventLanes[k]; lanes != 0; lanes &= lanes - 1) add(Long.numberOfTrailingZeros(lanes), v, d);
+                }
+                reached[v] = 0;
+                firstEvent[v] = 0;
+            }
+            marked[word] = 0;
+        }
+        events = 0;
+
+        AncestorDistances[] ancestors = new AncestorDistances[count];
+        for (int i = 0; i < count; i++) {
+            ancestors[i] = new AncestorDistances(Arrays.copyOf(laneVertices[i], laneSize[i]), Arrays.copyOf(laneDistances[i], laneSize[i]));
+            laneSize[i] = 0;
+        }
+        return ancestors;
+    }
+
+    // lanes reached v at distance d
+    private void event(int v, long lanes, int d) {
+        if (events == eventNext.length) {
+            eventNext = Arrays.copyOf(eventNext, 2 * events);
+            eventLanes = Arrays.copyOf(eventLanes, 2 * events);
+            eventLevel = Arrays.copyOf(eventLevel, 2 * events);
+        }
+        if (firstEvent[v] == 0) marked[v >>> 6] |= 1L << v;
+        eventNext[events] = firstEvent[v];
+        eventLanes[events] = lanes;
+        eventLevel[events] = d;
+        firstEvent[v] = ++events;
+    }
+
+    // v is an ancestor of lane i's subset at distance d
+    private void add(int i, int v, int d) {
+        int size = laneSize[i];
+        if (size == laneVertices[i].length) {
+            laneVertices[i] = Arrays.copyOf(laneVertices[i], 2 * size);
+            laneDistances[i] = Arrays.copyOf(laneDistances[i], 2 * size);
+        }
+        laneVertices[i][size] = v;
+        laneDistances[i][size] = d;
+        laneSize[i] = size + 1;
+    }
+}
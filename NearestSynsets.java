@@ -0,0 +1,132 @@
+/*
+NearestSynsets walks outward from a set of source vertices and yields every
+vertex they share an ancestor with, in nondecreasing ancestral distance: the
+length of a shortest path that climbs from a source to a common ancestor and
+then descends to the vertex.
+
+It is one BFS over (vertex, phase) states. In the up phase a state may move to
+a hypernym or turn around to a hyponym; in the down phase it may only move to
+another hyponym, so no path climbs again after descending. The hyponyms come
+from the reversed digraph. A vertex gets its distance the first time it is
+reached in either phase, and an up state makes the down state of the same
+vertex redundant, so every vertex is expanded at most twice.
+
+The search is lazy: next() does only as much of the BFS as it takes to find
+one more vertex. A caller that wants the k nearest stops after k, and the
+search never goes past the level of the k-th. Each search marks what it has
+seen in bit sets of V bits, so it holds no shared state and any number can
+run at once on any threads.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class NearestSynsets {
+    private static final int UP = 0;
+    private static final int DOWN = 1;
+
+    private final int[] offsets;          // hypernyms, as in CompactDigraph
+    private final int[] targets;
+    private final int[] reverseOffsets;   // hyponyms
+    private final int[] reverseTargets;
+    private final BitSet seen = new BitSet();     // vertices with a distance, in either phase
+    private final BitSet climbed = new BitSet();  // vertices reached in the up phase
+
+    private int[] queue = new int[16];    // states (vertex << 1 | phase), one BFS level after another
+    private int[] level = new int[16];    // level[i] is the distance of queue[i]
+    private int head;                     // next state to expand
+    private int tail;                     // states queued
+    private int[] found = new int[16];    // vertices in the order they got their distances
+    private int[] distances = new int[16];
+    private int count;                    // vertices found
+    private int returned;                 // vertices handed out by next()
+    private int vertex = -1;
+    private int distance = -1;
+
+    // a search of G, whose reverse is hyponyms, from every vertex in sources
+    public NearestSynsets(CompactDigraph G, CompactDigraph hyponyms, int... sources) {
+        if (hyponyms.V() != G.V() || hyponyms.E() != G.E()) throw new IllegalArgumentException("hyponyms is not the reverse of G");
+        offsets = G.offsets();
+        targets = G.targets();
+        reverseOffsets = hyponyms.offsets();
+        reverseTargets = hyponyms.targets();
+        for (int s : sources) {
+            if (s < 0 || s >= G.V()) throw new IllegalArgumentException("vertex " + s + " is not between 0 and " + (G.V() - 1));
+            if (seen.get(s)) continue;
+            seen.set(s);
+            climbed.set(s);
+            find(s, 0);
+            enqueue(s << 1 | UP, 0);
+        }
+    }
+
+    // move to the next nearest vertex; false once every vertex sharing an ancestor with the sources has been seen
+    public boolean next() {
+        while (returned == count && head < tail) expand();
+        if (returned == count) {
+            vertex = -1;
+            distance = -1;
+            return false;
+        }
+        vertex = found[returned];
+        distance = distances[returned++];
+        return true;
+    }
+
+    // the vertex next() moved to
+    public int vertex() {
+        return vertex;
+    }
+
+    // its ancestral distance from the nearest source
+    public int distance() {
+        return distance;
+    }
+
+    // take one state off the queue and queue the states one edge away
+    private void expand() {
+        int state = queue[head];
+        int d = level[head++] + 1;
+        int v = state >>> 1;
+        if ((state & 1) == UP) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int parent = targets[i];
+                if (climbed.get(parent)) continue;
+                climbed.set(parent);
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    find(parent, d);
+                }
+                enqueue(parent << 1 | UP, d);
+            }
+        }
+        for (int i = reverseOffsets[v]; i < reverseOffsets[v + 1]; i++) {
+            int child = reverseTargets[i];
+            if (seen.get(child)) continue;      // already as near, and an up state there would cover this one
+            seen.set(child);
+            find(child, d);
+            enqueue(child << 1 | DOWN, d);
+        }
+    }
+
+    private void enqueue(int state, int d) {
+        if (tail == queue.length) {
+            queue = Arrays.copyOf(queue, 2 * tail);
+            level = Arrays.copyOf(level, 2 * tail);
+        }
+        queue[tail] = state;
+        level[tail++] = d;
+    }
+
+    private void find(int v, int d) {
+        if (count == found.length) {
+            found = Arrays.copyOf(found, 2 * count);
+            distances = Arrays.copyOf(distances, 2 * count);
+        }
+        found[count] = v;
+        distances[count++] = d;
+    }
+}
@@ -0,0 +1,585 @@
+/*
+NounDictionary maps WordNet nouns to the ids of the synsets they belong to,
+and synset ids back to their words, without a single object per noun or per
+synset. Everything lives in one ByteBuffer image:
+
+    header        nouns, synsets, id entries, word entries, table slots, arena bytes
+    nounStart     noun n is arena[nounStart[n] .. nounStart[n + 1])
+    idStart       the synset ids of noun n are ids[idStart[n] .. idStart[n + 1])
+    ids
+    synsetStart   the words of synset s are nouns synsetWords[synsetStart[s] .. synsetStart[s + 1])
+    synsetWords
+    table         open-addressing hash table of noun numbers + 1, 0 for an empty slot
+    arena         the UTF-8 bytes of every noun, back to back
+
+all ints big-endian. The image can be on the heap, in a direct buffer off the
+heap, or a slice of a memory-mapped snapshot file, in which case loading the
+dictionary copies nothing at all.
+
+A dictionary built with Builder(false) leaves the synset sections out (its
+header has -1 word entries) and reads synsets from a SynsetText instead, so
+that only sca() ever decodes synset words. Such an image exists only in
+memory: compact() turns it into a complete one, which is what writeTo() and
+the snapshots need.
+
+Lists come out in the order the algs4 Bags they replace iterated in, most
+recently added first, so that queries and synset strings are exactly what
+they were with Bags.
+
+The image never changes, but the dictionary can still grow: addSynset() and
+addWord() record into a small on-heap overlay of concurrent maps that every
+lookup consults once it is non-empty, and compact() folds the overlay into a
+new image. Additions must come from one thread at a time; lookups may run
+on any number of threads while they happen.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class NounDictionary {
+    private static final int HEADER_INTS = 6;
+
+    private final ByteBuffer image;
+    private final int nounCount;
+    private final int synsetCount;
+    private final IntBuffer nounStart;
+    private final IntBuffer idStart;
+    private final IntBuffer ids;
+    private final IntBuffer synsetStart;
+    private final IntBuffer synsetWords;
+    private final IntBuffer table;
+    private final int mask;             // table size - 1
+    private final ByteBuffer arena;
+    private final SynsetText text;      // the synsets, when the image leaves them out; otherwise null
+
+    // the overlay: nouns and synsets added since the image was built, and lists that changed
+    private final ConcurrentHashMap<String, Integer> addedNouns = new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentHashMap<Integer, String> addedNames = new ConcurrentHashMap<Integer, String>();
+    private final ConcurrentHashMap<Integer, int[]> changedIds = new ConcurrentHashMap<Integer, int[]>();
+    private final ConcurrentHashMap<Integer, int[]> changedWords = new ConcurrentHashMap<Integer, int[]>();
+    private volatile int size;          // nouns, image and overlay
+    private volatile int synsets;       // synsets, image and overlay
+    private volatile int additions;     // synsets and words added to the overlay; 0 while lookups need only the image
+
+    // the dictionary whose image, as written by writeTo(), starts at the position of buffer. The image is
+    // used in place, not copied; bytes() tells how far it extends
+    public static NounDictionary wrap(ByteBuffer buffer) {
+        return new NounDictionary(buffer.slice());
+    }
+
+    private NounDictionary(ByteBuffer buffer) {
+        this(buffer, null);
+    }
+
+    // the dictionary whose image starts at the position of buffer, reading synsets from text if the
+    // image leaves them out
+    private NounDictionary(ByteBuffer buffer, SynsetText text) {
+        if (buffer.remaining() < 4 * HEADER_INTS) throw new IllegalArgumentException("dictionary image is truncated");
+        int[] header = new int[HEADER_INTS];
+        buffer.asIntBuffer().get(header);
+        nounCount = header[0];
+        synsetCount = header[1];
+        int idCount = header[2];
+        int wordCount = header[3];
+        int tableSize = header[4];
+        int arenaBytes = header[5];
+        boolean lazy = wordCount == -1;
+        if (lazy != (text != null) || (lazy && text.size() != synsetCount)) throw new IllegalArgumentException("dictionary image is corrupt");
+        if (lazy) {
+            header[3] = 0;
+            wordCount = 0;
+        }
+        for (int size : header) {
+            if (size < 0) throw new IllegalArgumentException("dictionary image is corrupt");
+        }
+        if (Integer.bitCount(tableSize) != 1 || tableSize <= nounCount) throw new IllegalArgumentException("dictionary image is corrupt");
+        long ints = HEADER_INTS + (nounCount + 1L) + (nounCount + 1L) + idCount + (lazy ? 0 : synsetCount + 1L) + wordCount + tableSize;
+        if (buffer.remaining() < 4 * ints + arenaBytes) throw new IllegalArgumentException("dictionary image is truncated");
+        ByteBuffer exact = buffer.duplicate();
+        exact.limit((int) (4 * ints + arenaBytes));
+        image = exact.slice();
+
+        int position = 4 * HEADER_INTS;
+        nounStart = ints(position, nounCount + 1);
+        position += 4 * (nounCount + 1);
+        idStart = ints(position, nounCount + 1);
+        position += 4 * (nounCount + 1);
+        ids = ints(position, idCount);
+        position += 4 * idCount;
+        synsetStart = lazy ? null : ints(position, synsetCount + 1);
+        position += lazy ? 0 : 4 * (synsetCount + 1);
+        synsetWords = lazy ? null : ints(position, wordCount);
+        position += 4 * wordCount;
+        table = ints(position, tableSize);
+        position += 4 * tableSize;
+        mask = tableSize - 1;
+        ByteBuffer bytes = image.duplicate();
+        bytes.position(position).limit(position + arenaBytes);
+        arena = bytes.slice();
+        size = nounCount;
+        synsets = synsetCount;
+        this.text = text;
+    }
+
+    private IntBuffer ints(int position, int count) {
+        ByteBuffer bytes = image.duplicate();
+        bytes.position(position).limit(position + 4 * count);
+        return bytes.slice().asIntBuffer();
+    }
+
+    // number of distinct nouns
+    public int size() {
+        return size;
+    }
+
+    // number of synsets, which are numbered 0 to synsetCount() - 1
+    public int synsetCount() {
+        return synsets;
+    }
+
+    // the number of noun, or -1 if it is not in the dictionary
+    public int find(String noun) {
+        int hash = hash(noun);
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int n = table.get(slot) - 1;
+            if (n == -1) break;
+            if (matches(n, noun)) return n;
+        }
+        if (additions == 0) return -1;
+        Integer added = addedNouns.get(noun);
+        return added == null ? -1 : added;
+    }
+
+    public boolean contains(String noun) {
+        return find(noun) != -1;
+    }
+
+    // noun number n
+    public String noun(int n) {
+        if (n >= nounCount) return addedNames.get(n);
+        int start = nounStart.get(n);
+        return decode(start, nounStart.get(n + 1) - start);
+    }
+
+    // the ids of the synsets noun n belongs to
+    public int[] ids(int n) {
+        if (additions != 0) {
+            int[] changed = changedIds.get(n);
+            if (changed != null) return changed.clone();
+        }
+        int start = idStart.get(n);
+        int[] result = new int[idStart.get(n + 1) - start];
+        for (int i = 0; i < result.length; i++) result[i] = ids.get(start + i);
+        return result;
+    }
+
+    // the words of synset id joined without a separator, the way WordNet.sca() reports a synset
+    public String synset(int id) {
+        if (id < 0 || id >= synsets) throw new IndexOutOfBoundsException("synset " + id);
+        if (additions != 0) {
+            int[] changed = changedWords.get(id);
+            if (changed != null) {
+                StringBuilder joined = new StringBuilder();
+                for (int n : changed) joined.append(noun(n));
+                return joined.toString();
+            }
+        }
+        if (text != null) return text.synset(id);
+        int length = 0;
+        for (int i = synsetStart.get(id); i < synsetStart.get(id + 1); i++) {
+            int n = synsetWords.get(i);
+            length += nounStart.get(n + 1) - nounStart.get(n);
+        }
+        byte[] bytes = new byte[length];
+        int at = 0;
+        for (int i = synsetStart.get(id); i < synsetStart.get(id + 1); i++) {
+            int n = synsetWords.get(i);
+            int start = nounStart.get(n);
+            int end = nounStart.get(n + 1);
+            for (int k = start; k < end; k++) bytes[at++] = arena.get(k);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // the numbers of the words in synset id, last word of its line first
+    public int[] words(int id) {
+        if (id < 0 || id >= synsets) throw new IndexOutOfBoundsException("synset " + id);
+        if (additions != 0) {
+            int[] changed = changedWords.get(id);
+            if (changed != null) return changed.clone();
+        }
+        return imageWords(id);
+    }
+
+    // number of words in synset id
+    public int synsetSize(int id) {
+        if (additions != 0) {
+            int[] changed = changedWords.get(id);
+            if (changed != null) return changed.length;
+        }
+        if (text != null) return text.wordCount(id);
+        return synsetStart.get(id + 1) - synsetStart.get(id);
+    }
+
+    // a new synset of words, numbered synsetCount(); returns its id
+    public int addSynset(String... words) {
+        int id = synsets;
+        changedWords.put(id, new int[0]);
+        additions++;
+        synsets = id + 1;
+        for (String word : words) addWord(id, word);
+        return id;
+    }
+
+    // Add word to synset id, and id to the synsets of word, both at the front as a Bag would. Lists are
+    // replaced, never changed, and a new noun becomes findable last, so lookups never see half an addition
+    public void addWord(int id, String word) {
+        if (word == null) throw new NullPointerException();
+        if (id < 0 || id >= synsets) throw new IndexOutOfBoundsException("synset " + id);
+        int n = find(word);
+        boolean added = n == -1;
+        if (added) n = size;
+        int[] words = changedWords.get(id);
+        changedIds.put(n, prepend(id, added ? new int[0] : ids(n)));
+        changedWords.put(id, prepend(n, words != null ? words : imageWords(id)));
+        if (added) addedNames.put(n, word);
+        additions++;
+        if (added) {
+            addedNouns.put(word, n);
+            size = n + 1;
+        }
+    }
+
+    // synsets and words added to the overlay since the image was built
+    public int additions() {
+        return additions;
+    }
+
+    // this dictionary with the overlay folded into a new, complete image, or this dictionary if there is
+    // no overlay and no synset it reads from the synsets file
+    public NounDictionary compact() {
+        if (additions == 0 && text == null) return this;
+        int nouns = size;
+        byte[][] encoded = new byte[nouns][];
+        int[][] nounIds = new int[nouns][];
+        for (int n = 0; n < nouns; n++) {
+            if (n < nounCount) {
+                int start = nounStart.get(n);
+                encoded[n] = new byte[nounStart.get(n + 1) - start];
+                for (int i = 0; i < encoded[n].length; i++) encoded[n][i] = arena.get(start + i);
+            } else {
+                encoded[n] = addedNames.get(n).getBytes(StandardCharsets.UTF_8);
+            }
+            nounIds[n] = ids(n);
+        }
+        int[][] words = new int[synsets][];
+        for (int id = 0; id < synsets; id++) {
+            int[] changed = changedWords.get(id);
+            words[id] = changed != null ? changed : imageWords(id);
+        }
+        return layout(encoded, nounIds, words, synsets, null, isDirect());
+    }
+
+    // the words of synset id as the image, or the synsets file, has them
+    private int[] imageWords(int id) {
+        if (text != null) {
+            String[] line = text.words(id);
+            int[] words = new int[line.length];
+            for (int k = 0; k < line.length; k++) words[k] = find(line[line.length - 1 - k]);
+            return words;
+        }
+        int start = synsetStart.get(id);
+        int[] words = new int[synsetStart.get(id + 1) - start];
+        for (int i = 0; i < words.length; i++) words[i] = synsetWords.get(start + i);
+        return words;
+    }
+
+    private static int[] prepend(int first, int[] rest) {
+        int[] list = new int[rest.length + 1];
+        list[0] = first;
+        System.arraycopy(rest, 0, list, 1, rest.length);
+        return list;
+    }
+
+    // every noun, in the order they were first added
+    public Iterable<String> nouns() {
+        return () -> new Iterator<String>() {
+            private int n;
+
+            public boolean hasNext() {
+                return n < size;
+            }
+
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return noun(n++);
+            }
+        };
+    }
+
+    // size of the image in bytes
+    public int bytes() {
+        return image.capacity();
+    }
+
+    // is the image outside the Java heap, in a direct or mapped buffer?
+    public boolean isDirect() {
+        return image.isDirect();
+    }
+
+    // the same dictionary, compacted if it has an overlay, with its image copied into a direct buffer off
+    // the Java heap; one that reads its synsets from the synsets file goes on doing so
+    public NounDictionary toDirect() {
+        NounDictionary compacted = additions == 0 ? this : compact();
+        ByteBuffer copy = ByteBuffer.allocateDirect(compacted.image.capacity());
+        copy.put(compacted.image.duplicate().clear());
+        copy.flip();
+        return new NounDictionary(copy, compacted.text);
+    }
+
+    // write the image, for wrap() to read back; compact() first if there have been additions, or if
+    // the synsets are read from the synsets file
+    public void writeTo(OutputStream out) throws IOException {
+        if (additions != 0 || text != null) throw new IllegalStateException("dictionary image is not complete, compact it first");
+        ByteBuffer bytes = image.duplicate().clear();
+        byte[] chunk = new byte[1 << 16];
+        while (bytes.hasRemaining()) {
+            int length = Math.min(chunk.length, bytes.remaining());
+            bytes.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    // two dictionaries are equal if their compacted images are, byte for byte
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof NounDictionary)) return false;
+        return compact().image.duplicate().clear().equals(((NounDictionary) other).compact().image.duplicate().clear());
+    }
+
+    public int hashCode() {
+        return compact().image.duplicate().clear().hashCode();
+    }
+
+    public String toString() {
+        return String.format("NounDictionary: %d nouns, %d synsets, %d bytes%s%s, %d additions",
+                             size, synsets, bytes(), isDirect() ? " off-heap" : "",
+                             text == null ? "" : " + " + text.bytes() + " of synset offsets", additions);
+    }
+
+    // hash of the UTF-8 bytes of s, as hash(bytes) computes it, without encoding s when it is ASCII
+    private static int hash(String s) {
+        int hash = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                return hash(bytes, 0, bytes.length);
+            }
+            hash = 31 * hash + c;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + bytes[i];
+        return hash ^ (hash >>> 16);
+    }
+
+    // is noun n exactly s?
+    private boolean matches(int n, String s) {
+        int start = nounStart.get(n);
+        int length = nounStart.get(n + 1) - start;
+        if (length != s.length()) {
+            return length > s.length() && s.equals(decode(start, length));
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = arena.get(start + i);
+            if (b < 0) return s.equals(decode(start, length));
+            if (s.charAt(i) != b) return false;
+        }
+        return true;
+    }
+
+    private String decode(int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = arena.get(start + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Collects synsets one at a time, in file order, and lays them out as an image. Not thread-safe
+    public static class Builder {
+        private final HashMap<String, Integer> numbers = new HashMap<String, Integer>();
+        private String[] nouns = new String[1024];
+        private int[] lastId = new int[1024];       // per noun, the newest entry of its id list, -1 if none
+        private int[] idValue = new int[1024];      // id entries: a synset id and the older entry before it
+        private int[] idNext = new int[1024];
+        private int idCount;
+        private int[] synsetIds = new int[1024];    // synsets in the order they were added
+        private int[] synsetEnds = new int[1024];   // synset i has words[synsetEnds[i - 1] .. synsetEnds[i])
+        private int[] words = new int[1024];
+        private int synsetCount;
+        private int wordCount;
+        private final boolean recordWords;          // false: the words of synsets are left to a SynsetText
+
+        // a builder of complete dictionaries
+        public Builder() {
+            this(true);
+        }
+
+        // a builder that records the words of every synset if synsetWords, and otherwise leaves them out
+        // for build(SynsetText, boolean)
+        public Builder(boolean synsetWords) {
+            recordWords = synsetWords;
+        }
+
+        // start the synset with the given id; its words follow with addWord()
+        public void beginSynset(int id) {
+            if (synsetCount == synsetIds.length) {
+                synsetIds = Arrays.copyOf(synsetIds, 2 * synsetCount);
+                synsetEnds = Arrays.copyOf(synsetEnds, 2 * synsetCount);
+            }
+            synsetIds[synsetCount] = id;
+            synsetEnds[synsetCount] = wordCount;
+            synsetCount++;
+        }
+
+        // add word to the synset begun last, and that synset to the ids of word
+        public void addWord(String word) {
+            if (synsetCount == 0) throw new IllegalStateException("no synset begun");
+            Integer number = numbers.get(word);
+            int n;
+            if (number == null) {
+                n = numbers.size();
+                if (n == nouns.length) {
+                    nouns = Arrays.copyOf(nouns, 2 * n);
+                    lastId = Arrays.copyOf(lastId, 2 * n);
+                }
+                nouns[n] = word;
+                lastId[n] = -1;
+                numbers.put(word, n);
+            } else {
+                n = number;
+            }
+
+            if (idCount == idValue.length) {
+                idValue = Arrays.copyOf(idValue, 2 * idCount);
+                idNext = Arrays.copyOf(idNext, 2 * idCount);
+            }
+            idValue[idCount] = synsetIds[synsetCount - 1];
+            idNext[idCount] = lastId[n];
+            lastId[n] = idCount++;
+
+            if (!recordWords) return;
+            if (wordCount == words.length) words = Arrays.copyOf(words, 2 * wordCount);
+            words[wordCount++] = n;
+            synsetEnds[synsetCount - 1] = wordCount;
+        }
+
+        // the dictionary of everything added so far, on the heap or in a direct buffer
+        public NounDictionary build(boolean direct) {
+            if (!recordWords) throw new IllegalStateException("synset words were not recorded, build with a SynsetText");
+            return build(null, direct);
+        }
+
+        // the dictionary of everything added so far, reading synsets from text; the builder must not
+        // have recorded synset words
+        public NounDictionary build(SynsetText text, boolean direct) {
+            if (recordWords == (text != null)) throw new IllegalStateException(recordWords ? "synset words were recorded, build without a SynsetText"
+                                                                                   : "synset words were not recorded, build with a SynsetText");
+            if (text != null && text.size() != synsetCount) throw new IllegalArgumentException("text has " + text.size() + " synsets, expected " + synsetCount);
+            int nounCount = numbers.size();
+            byte[][] encoded = new byte[nounCount][];
+            int[][] nounIds = new int[nounCount][];
+            for (int n = 0; n < nounCount; n++) {
+                encoded[n] = nouns[n].getBytes(StandardCharsets.UTF_8);
+                int count = 0;
+                for (int e = lastId[n]; e != -1; e = idNext[e]) count++;
+                nounIds[n] = new int[count];
+                count = 0;
+                for (int e = lastId[n]; e != -1; e = idNext[e]) nounIds[n][count++] = idValue[e];
+            }
+
+            // ids must be 0 .. synsetCount - 1, once each; every synset's words last word of the line first
+            boolean[] listed = new boolean[synsetCount];
+            int[][] synsetWords = text == null ? new int[synsetCount][] : null;
+            for (int i = 0; i < synsetCount; i++) {
+                int id = synsetIds[i];
+                if (id < 0 || id >= synsetCount) throw new IllegalArgumentException("synset id " + id + " out of range 0.." + (synsetCount - 1));
+                if (listed[id]) throw new IllegalArgumentException("synset id " + id + " listed twice");
+                listed[id] = true;
+                if (synsetWords == null) continue;
+                int start = i == 0 ? 0 : synsetEnds[i - 1];
+                synsetWords[id] = new int[synsetEnds[i] - start];
+                for (int k = 0; k < synsetWords[id].length; k++) synsetWords[id][k] = words[synsetEnds[i] - 1 - k];
+            }
+            return layout(encoded, nounIds, synsetWords, synsetCount, text, direct);
+        }
+    }
+
+    // an image of the nouns encoded[n] with synset ids nounIds[n], and of the synsets with words synsetWords[id];
+    // if synsetWords is null, the synset sections are left out and synsets are read from text
+    private static NounDictionary layout(byte[][] encoded, int[][] nounIds, int[][] synsetWords, int synsetCount,
+                                         SynsetText text, boolean direct) {
+        int nounCount = encoded.length;
+        long arenaBytes = 0;
+        long idCount = 0;
+        long wordCount = 0;
+        for (int n = 0; n < nounCount; n++) {
+            arenaBytes += encoded[n].length;
+            idCount += nounIds[n].length;
+        }
+        if (synsetWords != null) {
+            for (int[] words : synsetWords) wordCount += words.length;
+        }
+        int tableSize = Integer.highestOneBit(Math.max(2, 2 * nounCount)) << 1;
+
+        long ints = HEADER_INTS + 2 * (nounCount + 1L) + idCount + (synsetWords == null ? 0 : synsetCount + 1L) + wordCount + tableSize;
+        long size = 4 * ints + arenaBytes;
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("dictionary would take " + size + " bytes");
+        ByteBuffer image = direct ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+        IntBuffer out = image.asIntBuffer();
+        out.put(nounCount).put(synsetCount).put((int) idCount).put(synsetWords == null ? -1 : (int) wordCount).put(tableSize).put((int) arenaBytes);
+
+        int offset = 0;
+        out.put(offset);
+        for (int n = 0; n < nounCount; n++) out.put(offset += encoded[n].length);
+
+        offset = 0;
+        out.put(offset);
+        for (int n = 0; n < nounCount; n++) out.put(offset += nounIds[n].length);
+        for (int[] ids : nounIds) out.put(ids);
+
+        if (synsetWords != null) {
+            offset = 0;
+            out.put(offset);
+            for (int[] words : synsetWords) out.put(offset += words.length);
+            for (int[] words : synsetWords) out.put(words);
+        }
+
+        int[] table = new int[tableSize];
+        for (int n = 0; n < nounCount; n++) {
+            int slot = hash(encoded[n], 0, encoded[n].length) & (tableSize - 1);
+            while (table[slot] != 0) slot = (slot + 1) & (tableSize - 1);
+            table[slot] = n + 1;
+        }
+        out.put(table);
+
+        image.position(4 * out.position());
+        for (byte[] bytes : encoded) image.put(bytes);
+        image.clear();
+        return new NounDictionary(image, text);
+    }
+}
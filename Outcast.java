@@ -27,29 +27,57 @@ Supporting code for this assignment is part of the Algorithms Fourth Edition
 Library and can be found here: https://algs4.cs.princeton.edu/code/
  */
 
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.Stopwatch;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Outcast {
+   private static final int MAX_CACHED_NOUNS = 4096;  // above this a group's distance cache, 4 bytes a pair, is not worth its memory
+
    WordNet wordnet;
+   private final ExecutorService executor;  // null for the serial algorithm
+
    // constructor takes a WordNet object
    public Outcast(WordNet wordnet) {    
        this.wordnet = wordnet;
+       this.executor = null;
+   }
+
+   // outcast queries fan out over executor; executor must not be running the caller
+   public Outcast(WordNet wordnet, ExecutorService executor) {
+       if (executor == null) throw new NullPointerException();
+       this.wordnet = wordnet;
+       this.executor = executor;
    }
    
    // given an array of WordNet nouns, return an outcast
    public String outcast(String[] nouns) throws IOException {
+       if (executor != null) return outcasts(new String[][] { nouns })[0];
        int maxDistance = 0;
        int outcast_id = -999;
 
+       // one batch call: every noun's ancestors are searched once instead of once per pair
+       int[][] distances = wordnet.distances(nouns);
+
        for (int i = 0; i < nouns.length; i++) {
            int relDistance = 0;
            int totalDistance = 0;
 
            for (int j = 0; j < nouns.length; j++) {
                if (nouns[i].equals(nouns[j])) continue;
-               relDistance = wordnet.distance(nouns[i], nouns[j]);
+               relDistance = distances[i][j];
                totalDistance += relDistance;
 
                if (totalDistance > maxDistance) {
@@ -60,18 +88,165 @@ public class Outcast {
        }
        return nouns[outcast_id];
    }
+
+   // the outcast of every group, the same answers as calling outcast() on each group in turn.
+   // With an executor all groups are scored at once: first every noun's ancestors are searched
+   // in parallel, then every (group, candidate) total is computed in parallel
+   public String[] outcasts(String[][] groups) throws IOException {
+       String[] outcasts = new String[groups.length];
+       if (executor == null) {
+           for (int g = 0; g < groups.length; g++) outcasts[g] = outcast(groups[g]);
+           return outcasts;
+       }
+
+       int noPath = wordnet.engine().digraph().E();     // what distance() reports for nouns without a common ancestor
+       Group[] scored = new Group[groups.length];
+       List<Callable<Void>> searches = new ArrayList<Callable<Void>>();
+       for (int g = 0; g < groups.length; g++) {
+           Group group = new Group(groups[g], noPath);
+           scored[g] = group;
+           for (int i = 0; i < group.nouns.length; i++) {
+               final int noun = i;
+               searches.add(() -> {
+                   group.reach[noun] = wordnet.ancestorDistances(group.nouns[noun]);
+                   return null;
+               });
+           }
+       }
+       runAll(searches);
+
+       int root = wordnet.engine().root();
+       List<Callable<Void>> candidates = new ArrayList<Callable<Void>>();
+       for (Group group : scored) {
+           group.bound(root);
+           for (int i : group.byBound) {
+               candidates.add(() -> {
+                   group.score(i);
+                   return null;
+               });
+           }
+       }
+       runAll(candidates);
+
+       for (int g = 0; g < groups.length; g++) outcasts[g] = scored[g].outcast();
+       return outcasts;
+   }
+
+   // the scoring state of one group of nouns, shared by the tasks scoring its candidates
+   private static class Group {
+       private final String[] nouns;
+       private final AncestorDistances[] reach;   // ancestors of each noun's synsets
+       private final int noPath;                  // the distance of two nouns without a common ancestor, as distance() has it
+       private final AtomicIntegerArray cache;    // distance(i, j) + 1 at [pair(i, j)], 0 if not computed yet
+       private final AtomicLong best;             // best total in the high half, ~index in the low half; -1 if none yet
+       private int[] height;                      // distance of each noun to the root, null if the DAG is not rooted
+       private long[] boundAfter;                 // boundAfter[j] = sum of height[k] for k >= j
+       private Integer[] byBound;                 // candidates, most distant first
+
+       private Group(String[] nouns, int noPath) {
+           this.nouns = nouns;
+           this.noPath = noPath;
+           this.reach = new AncestorDistances[nouns.length];
+           int n = nouns.length;
+           this.cache = n <= MAX_CACHED_NOUNS ? new AtomicIntegerArray(n * (n - 1) / 2) : null;
+           this.best = new AtomicLong(-1);
+       }
+
+       // Every noun reaches the root, so distance(i, j) <= height[i] + height[j]. Scoring the candidates
+       // with the largest such bound first finds a large total early, which lets the others stop sooner
+       private void bound(int root) {
+           int n = nouns.length;
+           byBound = new Integer[n];
+           for (int i = 0; i < n; i++) byBound[i] = i;
+           if (root == -1) return;
+           height = new int[n];
+           boundAfter = new long[n + 1];
+           for (int j = n - 1; j >= 0; j--) {
+               height[j] = reach[j].distanceTo(root);
+               boundAfter[j] = boundAfter[j + 1] + height[j];
+           }
+           long[] total = new long[n];
+           for (int i = 0; i < n; i++) total[i] = (long) n * height[i] + boundAfter[0];
+           Arrays.sort(byBound, (a, b) -> Long.compare(total[b], total[a]));
+       }
+
+       // total distance from candidate i to the others, given up as soon as even the upper bound
+       // on the rest cannot reach the best total so far (ties are still scored, the lowest index wins)
+       private void score(int i) {
+           int n = nouns.length;
+           long total = 0;
+           for (int j = 0; j < n; j++) {
+               if (height != null && (j & 15) == 0) {
+                   long bound = total + (long) (n - j) * height[i] + boundAfter[j];
+                   if (bound < (best.get() >> 32)) return;
+               }
+               if (nouns[i].equals(nouns[j])) continue;
+               total += distance(i, j);
+           }
+           long packed = (total << 32) | (~i & 0xFFFFFFFFL);
+           best.accumulateAndGet(packed, Math::max);
+       }
+
+       // distance(i, j) as WordNet.distance() reports it, computed at most once per unordered pair while the
+       // cache is in use; i and j differ
+       private int distance(int i, int j) {
+           if (cache == null) return length(i, j);
+           int pair = i < j ? j * (j - 1) / 2 + i : i * (i - 1) / 2 + j;
+           int cached = cache.get(pair);
+           if (cached != 0) return cached - 1;
+           int distance = length(i, j);
+           cache.set(pair, distance + 1);
+           return distance;
+       }
+
+       private int length(int i, int j) {
+           int length = reach[i].length(reach[j]);
+           return length == -1 ? noPath : length;
+       }
+
+       // same convention as outcast(): a noun with a positive total, or nouns[-999] if there is none
+       private String outcast() {
+           long packed = best.get();
+           int outcast_id = packed > 0 && (packed >> 32) > 0 ? ~(int) packed : -999;
+           return nouns[outcast_id];
+       }
+   }
+
+   // run the tasks on the executor and wait for all of them
+   private void runAll(List<Callable<Void>> tasks) throws IOException {
+       try {
+           for (Future<Void> done : executor.invokeAll(tasks)) done.get();
+       } catch (InterruptedException e) {
+           Thread.currentThread().interrupt();
+           throw new IOException("interrupted while scoring outcasts", e);
+       } catch (ExecutionException e) {
+           if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+           throw new IOException(e.getCause());
+       }
+   }
    
    // Unit Test client with Stopwatch()
    public static void main(String[] args) throws IOException { //throw because WordNet throws
        WordNet wordnet = new WordNet(args[0], args[1]);
        Outcast outcast = new Outcast(wordnet);
+       String[][] groups = new String[Math.max(0, args.length - 2)][];
        for (int t = 2; t < args.length; t++) {
            In in = new In(args[t]);
            String[] nouns = in.readAllStrings();
+           groups[t - 2] = nouns;
            Stopwatch stopwatch = new Stopwatch();
            StdOut.println(args[t] + ": " + outcast.outcast(nouns));
            System.out.println(stopwatch.elapsedTime());
 
        }
+
+       // all files at once on the common fork-join pool, which must agree with the serial answers
+       Outcast parallel = new Outcast(wordnet, ForkJoinPool.commonPool());
+       Stopwatch stopwatch = new Stopwatch();
+       String[] answers = parallel.outcasts(groups);
+       for (int t = 2; t < args.length; t++) {
+           StdOut.println(args[t] + " (parallel): " + answers[t - 2]);
+       }
+       System.out.println(stopwatch.elapsedTime());
    }
 }
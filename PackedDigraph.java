@@ -0,0 +1,559 @@
+/*
+PackedDigraph is a read-only hypernym graph kept on disk in compressed
+blocks, for lexicons too large to hold as Java objects: merged multilingual
+wordnets with tens of millions of synsets. Queries read the file through a
+memory mapping and decode only the blocks they touch, into a small cache of
+decoded blocks, so the heap a PackedDigraph needs depends on the size of that
+cache and not on the size of the graph.
+
+The file, all fixed-width numbers big-endian:
+
+    header   magic, version, V, E (a long), vertices per block as a power of two,
+             number of blocks, position of the block index (a long)
+    blocks   for every vertex of the block in turn: its outdegree, then each of its
+             targets as the difference from the one before it (from the vertex itself
+             for the first), zigzag-encoded; every number a varint
+    index    the position of every block, and of the end of the last, as longs
+
+Targets keep the order of the input, so a search over a PackedDigraph visits
+vertices in the order it would over the CompactDigraph of the same edges.
+Hypernyms are usually close to their synsets and to each other in id, so
+the file for WordNet is half the size of its CSR arrays.
+
+Builder writes the file from a stream of edges in any order with bounded
+heap: it sorts runs of edges in memory, spills each run to a temporary file,
+and merges the runs into blocks. Apart from the runs and one long per block
+for the index, nothing grows with the graph. Neither the builder nor the
+reader checks for cycles, which takes memory proportional to V; the search
+terminates on any digraph, but the answers only mean something on a DAG.
+
+The mapping is a single ByteBuffer, so a file is limited to 2 GB, which is
+room for several hundred million edges.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class PackedDigraph {
+    private static final int MAGIC = 0x574E5047;    // "WNPG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 36;
+    private static final int BLOCK_SHIFT = 6;        // 64 vertices per block
+
+    private final ByteBuffer file;        // the whole file, usually memory-mapped
+    private final int V;
+    private final long E;
+    private final int shift;              // a block holds the vertices v with the same v >>> shift
+    private final int blockCount;
+    private final int index;              // position of the block index in file
+    private final Block[] cache;          // decoded blocks, block b in slot b & (cache.length - 1)
+
+    // One block, decoded: the targets of its k-th vertex are targets[starts[k] .. starts[k + 1]).
+    // Immutable, so a block can be handed from thread to thread through the cache without locking
+    private static class Block {
+        private final int number;
+        private final int[] starts;
+        private final int[] targets;
+
+        private Block(int number, int[] starts, int[] targets) {
+            this.number = number;
+            this.starts = starts;
+            this.targets = targets;
+        }
+    }
+
+    private PackedDigraph(ByteBuffer file, int V, long E, int shift, int blockCount, int index, int cacheBlocks) {
+        this.file = file;
+        this.V = V;
+        this.E = E;
+        this.shift = shift;
+        this.blockCount = blockCount;
+        this.index = index;
+        this.cache = new Block[Integer.highestOneBit(cacheBlocks)];
+    }
+
+    // Map a file written by Builder, keeping at most cacheBlocks decoded blocks on the heap. Checks the
+    // header and the block index; a corrupt block is only noticed when a query decodes it
+    public static PackedDigraph open(Path path, int cacheBlocks) throws IOException {
+        if (path == null) throw new NullPointerException();
+        if (cacheBlocks < 1) throw new IllegalArgumentException("cache needs at least one block");
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(path + " is too large to map");
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.limit() < HEADER_BYTES || in.getInt(0) != MAGIC) throw new IOException(path + " is not a packed digraph");
+        int version = in.getInt(4);
+        if (version != VERSION) throw new IOException(path + " has packed digraph version " + version + ", expected " + VERSION);
+        int V = in.getInt(8);
+        long E = in.getLong(12);
+        int shift = in.getInt(20);
+        int blockCount = in.getInt(24);
+        long index = in.getLong(28);
+        if (V < 0 || E < 0 || shift < 0 || shift > 20 || blockCount != blocks(V, shift)
+                || index < HEADER_BYTES || index + 8L * (blockCount + 1) > in.limit()) {
+            throw new IOException(path + " is truncated or corrupt");
+        }
+        long previous = HEADER_BYTES;
+        for (int b = 0; b <= blockCount; b++) {
+            long position = in.getLong((int) index + 8 * b);
+            if (position < previous || position > index) throw new IOException(path + " is corrupt: block " + b + " is out of place");
+            previous = position;
+        }
+        return new PackedDigraph(in, V, E, shift, blockCount, (int) index, cacheBlocks);
+    }
+
+    // number of vertices
+    public int V() {
+        return V;
+    }
+
+    // number of edges
+    public long E() {
+        return E;
+    }
+
+    // size of the file, all of it mapped rather than read onto the heap
+    public long bytes() {
+        return file.limit();
+    }
+
+    // number of decoded blocks the cache holds at most
+    public int cacheBlocks() {
+        return cache.length;
+    }
+
+    // number of edges leaving v
+    public int outdegree(int v) {
+        validateVertex(v);
+        Block block = block(v >>> shift);
+        int k = v & ((1 << shift) - 1);
+        return block.starts[k + 1] - block.starts[k];
+    }
+
+    // the vertices adjacent from v, in the order the edges were added
+    public int[] adj(int v) {
+        validateVertex(v);
+        Block block = block(v >>> shift);
+        int k = v & ((1 << shift) - 1);
+        return Arrays.copyOfRange(block.targets, block.starts[k], block.starts[k + 1]);
+    }
+
+    // Every ancestor of the sources (the sources included), with its distance from the nearest one: what
+    // ShortestCommonAncestor.ancestorDistances() returns on the same graph. The search keeps its distances
+    // in a hash table, so it takes memory for the ancestors it finds, not for the whole graph
+    public AncestorDistances ancestorDistances(int... sources) {
+        if (sources.length == 0) throw new IllegalArgumentException("no source vertices");
+        for (int s : sources) validateVertex(s);
+        DistanceTable table = new DistanceTable();
+        int[] queue = new int[16];
+        int tail = 0;
+        for (int s : sources) {
+            if (table.putIfAbsent(s, 0)) {
+                if (tail == queue.length) queue = Arrays.copyOf(queue, 2 * tail);
+                queue[tail++] = s;
+            }
+        }
+        int mask = (1 << shift) - 1;
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            int d = table.get(v) + 1;
+            Block block = block(v >>> shift);
+            int[] targets = block.targets;
+            for (int i = block.starts[v & mask]; i < block.starts[(v & mask) + 1]; i++) {
+                if (!table.putIfAbsent(targets[i], d)) continue;
+                if (tail == queue.length) queue = Arrays.copyOf(queue, 2 * tail);
+                queue[tail++] = targets[i];
+            }
+        }
+        return table.sorted();
+    }
+
+    // a shortest ancestral path between v and w, from one search up from each
+    public AncestralPath path(int v, int w) {
+        return ancestorDistances(v).path(ancestorDistances(w));
+    }
+
+    // a shortest ancestral path between any vertex of A and any vertex of B
+    public AncestralPath path(int[] A, int[] B) {
+        return ancestorDistances(A).path(ancestorDistances(B));
+    }
+
+    // Block b, from the cache or decoded from the file. Two threads may decode the same block at once and
+    // overwrite each other's slot; that costs a decode, never a wrong answer, since blocks are immutable
+    private Block block(int b) {
+        int slot = b & (cache.length - 1);
+        Block block = cache[slot];
+        if (block == null || block.number != b) {
+            block = decode(b);
+            cache[slot] = block;
+        }
+        return block;
+    }
+
+    private Block decode(int b) {
+        int position = (int) file.getLong(index + 8 * b);
+        int end = (int) file.getLong(index + 8 * (b + 1));
+        int first = b << shift;
+        int count = Math.min(1 << shift, V - first);
+        int[] starts = new int[count + 1];
+        int[] targets = new int[end - position];    // every target takes at least one byte
+        int size = 0;
+        for (int k = 0; k < count; k++) {
+            long degree = readVarint(file, position, end);
+            position += varintBytes(degree);
+            if (degree > targets.length - size) throw new IllegalStateException("packed digraph is corrupt in block " + b);
+            int previous = first + k;
+            for (long i = 0; i < degree; i++) {
+                long zigzag = readVarint(file, position, end);
+                position += varintBytes(zigzag);
+                long target = previous + ((zigzag >>> 1) ^ -(zigzag & 1));
+                if (target < 0 || target >= V) throw new IllegalStateException("packed digraph is corrupt in block " + b);
+                targets[size++] = (int) target;
+                previous = (int) target;
+            }
+            starts[k + 1] = size;
+        }
+        return new Block(b, starts, Arrays.copyOf(targets, size));
+    }
+
+    private void validateVertex(int v) {
+        if (v < 0 || v >= V) throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (V - 1));
+    }
+
+    // number of blocks for V vertices
+    private static int blocks(int V, int shift) {
+        return (int) (((long) V + (1 << shift) - 1) >>> shift);
+    }
+
+    // the varint at position, which must end before end
+    private static long readVarint(ByteBuffer in, int position, int end) {
+        long value = 0;
+        for (int bits = 0; bits < 64; bits += 7) {
+            if (position >= end) throw new IllegalStateException("packed digraph is corrupt: varint runs past its block");
+            byte b = in.get(position++);
+            value |= (long) (b & 0x7F) << bits;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("packed digraph is corrupt: varint too long");
+    }
+
+    private static int varintBytes(long value) {
+        int bytes = 1;
+        while ((value >>>= 7) != 0) bytes++;
+        return bytes;
+    }
+
+    // Open-addressing map from vertex to distance for one search; only ever grows
+    private static class DistanceTable {
+        private int[] keys = new int[64];       // vertex + 1, 0 for an empty slot
+        private int[] values = new int[64];
+        private int size;
+
+        // put v at distance d unless v is already there; was it put?
+        private boolean putIfAbsent(int v, int d) {
+            if (2 * (size + 1) > keys.length) resize();
+            int mask = keys.length - 1;
+            int slot = hash(v) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == v + 1) return false;
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = v + 1;
+            values[slot] = d;
+            size++;
+            return true;
+        }
+
+        private int get(int v) {
+            int mask = keys.length - 1;
+            int slot = hash(v) & mask;
+            while (keys[slot] != v + 1) slot = (slot + 1) & mask;
+            return values[slot];
+        }
+
+        // the entries in ascending order of vertex
+        private AncestorDistances sorted() {
+            long[] entries = new long[size];
+            int n = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) entries[n++] = (long) (keys[slot] - 1) << 32 | values[slot];
+            }
+            Arrays.sort(entries);
+            int[] vertices = new int[size];
+            int[] distances = new int[size];
+            for (int i = 0; i < size; i++) {
+                vertices[i] = (int) (entries[i] >>> 32);
+                distances[i] = (int) entries[i];
+            }
+            return new AncestorDistances(vertices, distances);
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[2 * oldKeys.length];
+            values = new int[2 * oldKeys.length];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0) continue;
+                int slot = hash(oldKeys[i] - 1) & mask;
+                while (keys[slot] != 0) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int hash(int v) {
+            int h = v * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // Write the packed form of the WordNet files synsets and hypernyms to path, with one vertex per line of
+    // synsets. Both files are scanned through mappings and the edges go straight to a Builder, so neither the
+    // synsets nor the edges are ever all on the heap
+    public static void convert(String synsets, String hypernyms, Path path) throws IOException {
+        if (synsets == null || hypernyms == null || path == null) throw new NullPointerException();
+        int V = 0;
+        CsvScanner lines = CsvScanner.open(synsets);
+        while (lines.hasNext()) {
+            lines.skipLine();
+            V++;
+        }
+
+        // the same lines getHypernyms() reads: "id,hypernym,hypernym,..."
+        try (Builder builder = new Builder(path, Builder.RUN_EDGES)) {
+            CsvScanner input = CsvScanner.open(hypernyms);
+            while (input.hasNext()) {
+                int synset = input.readInt();
+                while (input.skip(',')) {
+                    if (input.atFieldEnd()) continue;   // trailing comma
+                    builder.addEdge(synset, input.readInt());
+                }
+                input.skipLine();
+            }
+            builder.build(V);
+        }
+    }
+
+    // Streams edges in any order into a packed digraph file. Edges are kept in a run of at most runEdges;
+    // a full run is sorted by source, stably, so edges from one vertex keep the order they were added in,
+    // and spilled to a temporary file next to the output. build() merges the runs into blocks. Not thread-safe
+    public static class Builder implements AutoCloseable {
+        public static final int RUN_EDGES = 1 << 20;    // 12 MB of run buffer
+
+        private final Path path;
+        private final long[] run;       // source << 32 | position in the run, sorted before a spill
+        private final int[] runTargets;
+        private int runSize;
+        private final ArrayList<Path> spills = new ArrayList<Path>();
+        private long edges;
+        private int maxVertex = -1;
+        private boolean built;
+
+        // a builder for the file at path, sorting up to runEdges edges at a time in memory
+        public Builder(Path path, int runEdges) {
+            if (path == null) throw new NullPointerException();
+            if (runEdges < 1) throw new IllegalArgumentException("runs need room for at least one edge");
+            this.path = path;
+            run = new long[runEdges];
+            runTargets = new int[runEdges];
+        }
+
+        // the edge from->to, after every edge from the same vertex added before it
+        public void addEdge(int from, int to) throws IOException {
+            if (built) throw new IllegalStateException("already built");
+            if (from < 0 || to < 0) throw new IllegalArgumentException("edge " + from + "->" + to + " has a negative vertex");
+            if (runSize == run.length) spill();
+            run[runSize] = (long) from << 32 | runSize;
+            runTargets[runSize++] = to;
+            maxVertex = Math.max(maxVertex, Math.max(from, to));
+            edges++;
+        }
+
+        // number of edges added so far
+        public long edges() {
+            return edges;
+        }
+
+        // Write the file for a digraph on V vertices, with every edge added, and delete the runs. Throws
+        // IllegalArgumentException if an edge has a vertex V or over
+        public void build(int V) throws IOException {
+            if (built) throw new IllegalStateException("already built");
+            if (maxVertex >= V) throw new IllegalArgumentException("vertex " + maxVertex + " is not between 0 and " + (V - 1));
+            built = true;
+            if (runSize > 0) spill();
+            int blockCount = blocks(V, BLOCK_SHIFT);
+            long[] positions = new long[blockCount + 1];
+
+            DataInputStream[] runs = new DataInputStream[spills.size()];
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+                for (int i = 0; i < runs.length; i++) {
+                    runs[i] = new DataInputStream(new BufferedInputStream(Files.newInputStream(spills.get(i)), 1 << 16));
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(V);
+                out.writeLong(edges);
+                out.writeInt(BLOCK_SHIFT);
+                out.writeInt(blockCount);
+                out.writeLong(0);           // the index position, filled in below
+
+                // k-way merge of the runs, the next edge of each as source << 32 | target
+                RunHeap heap = new RunHeap(runs.length);
+                for (int i = 0; i < runs.length; i++) heap.offer(i, next(runs[i]));
+                long position = HEADER_BYTES;
+                int[] targets = new int[16];
+                for (int v = 0; v < V; v++) {
+                    if ((v & ((1 << BLOCK_SHIFT) - 1)) == 0) positions[v >>> BLOCK_SHIFT] = position;
+                    int degree = 0;
+                    while (heap.size() > 0 && (int) (heap.edge() >>> 32) == v) {
+                        if (degree == targets.length) targets = Arrays.copyOf(targets, 2 * degree);
+                        targets[degree++] = (int) heap.edge();
+                        int i = heap.poll();
+                        heap.offer(i, next(runs[i]));
+                    }
+                    position += writeVarint(out, degree);
+                    int previous = v;
+                    for (int k = 0; k < degree; k++) {
+                        long delta = (long) targets[k] - previous;
+                        position += writeVarint(out, (delta << 1) ^ (delta >> 63));
+                        previous = targets[k];
+                    }
+                }
+                positions[blockCount] = position;
+                if (position > Integer.MAX_VALUE - 8L * (blockCount + 1)) throw new IOException(path + " would be too large to map");
+                for (long p : positions) out.writeLong(p);
+            } finally {
+                for (DataInputStream in : runs) {
+                    if (in != null) in.close();
+                }
+                close();
+            }
+
+            // now that the blocks are written, point the header at the index behind them
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ByteBuffer index = ByteBuffer.allocate(8).putLong(0, positions[blockCount]);
+                channel.write(index, 28);
+            }
+        }
+
+        // delete any runs left behind
+        public void close() throws IOException {
+            for (Path spill : spills) Files.deleteIfExists(spill);
+            spills.clear();
+        }
+
+        // sort the run by source, then by position, and write it out as (source, target) pairs
+        private void spill() throws IOException {
+            Arrays.sort(run, 0, runSize);
+            Path spill = Files.createTempFile(path.toAbsolutePath().getParent(), "packed", ".run");
+            spills.add(spill);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spill), 1 << 16))) {
+                for (int i = 0; i < runSize; i++) {
+                    out.writeInt((int) (run[i] >>> 32));
+                    out.writeInt(runTargets[(int) run[i]]);
+                }
+            }
+            runSize = 0;
+        }
+
+        // the next edge of a run as source << 32 | target, or -1 at its end
+        private static long next(DataInputStream in) throws IOException {
+            int source;
+            try {
+                source = in.readInt();
+            } catch (EOFException e) {
+                return -1;
+            }
+            return (long) source << 32 | (in.readInt() & 0xFFFFFFFFL);
+        }
+
+        // Min-heap of runs by their next edge. Ties on the source go to the earlier run, so the edges of a
+        // vertex come out in the order they were added even when a spill fell between them
+        private static class RunHeap {
+            private final int[] runs;
+            private final long[] edges;
+            private int size;
+
+            private RunHeap(int capacity) {
+                runs = new int[capacity];
+                edges = new long[capacity];
+            }
+
+            private int size() {
+                return size;
+            }
+
+            // the smallest next edge
+            private long edge() {
+                return edges[0];
+            }
+
+            // run i with next edge edge, unless the run is spent (edge -1)
+            private void offer(int i, long edge) {
+                if (edge == -1) return;
+                int k = size++;
+                while (k > 0 && before(i, edge, runs[(k - 1) / 2], edges[(k - 1) / 2])) {
+                    runs[k] = runs[(k - 1) / 2];
+                    edges[k] = edges[(k - 1) / 2];
+                    k = (k - 1) / 2;
+                }
+                runs[k] = i;
+                edges[k] = edge;
+            }
+
+            // remove the run with the smallest next edge and return it
+            private int poll() {
+                int top = runs[0];
+                int i = runs[--size];
+                long edge = edges[size];
+                int k = 0;
+                while (2 * k + 1 < size) {
+                    int child = 2 * k + 1;
+                    if (child + 1 < size && before(runs[child + 1], edges[child + 1], runs[child], edges[child])) child++;
+                    if (!before(runs[child], edges[child], i, edge)) break;
+                    runs[k] = runs[child];
+                    edges[k] = edges[child];
+                    k = child;
+                }
+                runs[k] = i;
+                edges[k] = edge;
+                return top;
+            }
+
+            // does run i's edge come before run j's? by source, then by run
+            private static boolean before(int i, long edge, int j, long other) {
+                long source = edge >>> 32;
+                long otherSource = other >>> 32;
+                return source < otherSource || (source == otherSource && i < j);
+            }
+        }
+
+        private static int writeVarint(DataOutputStream out, long value) throws IOException {
+            int bytes = 1;
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+                bytes++;
+            }
+            out.writeByte((int) value);
+            return bytes;
+        }
+    }
+}
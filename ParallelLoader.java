@@ -0,0 +1,147 @@
+/*
+ParallelLoader parses the WordNet input files on a fork-join pool. Each file
+is memory-mapped and cut into chunks that start and end on line boundaries;
+every chunk is scanned by its own task and the results come back in file
+order, so whoever merges them sees the lines exactly as a sequential reader
+would.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelLoader {
+    private static final int MIN_CHUNK = 1 << 16;     // smaller chunks cost more in task overhead than they save
+
+    // the synset lines of one chunk: line i is synset ids[i] with words[wordEnds[i - 1] .. wordEnds[i])
+    public static class SynsetLines {
+        public int lines;
+        public int[] ids = new int[64];
+        public int[] wordEnds = new int[64];
+        public String[] words = new String[128];
+        private int wordCount;
+
+        private void addWord(String word) {
+            if (wordCount == words.length) words = Arrays.copyOf(words, 2 * wordCount);
+            words[wordCount++] = word;
+        }
+
+        private void endLine(int id) {
+            if (lines == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * lines);
+                wordEnds = Arrays.copyOf(wordEnds, 2 * lines);
+            }
+            ids[lines] = id;
+            wordEnds[lines] = wordCount;
+            lines++;
+        }
+    }
+
+    // a list of edges from[i]->to[i], i < count
+    public static class Edges {
+        public int count;
+        public int[] from = new int[64];
+        public int[] to = new int[64];
+
+        private void add(int v, int w) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, 2 * count);
+                to = Arrays.copyOf(to, 2 * count);
+            }
+            from[count] = v;
+            to[count] = w;
+            count++;
+        }
+    }
+
+    // the lines of a synsets file, one SynsetLines per chunk, in file order
+    public static ForkJoinTask<ArrayList<SynsetLines>> synsets(String file, ForkJoinPool pool) throws IOException {
+        ByteBuffer[] chunks = split(CsvScanner.map(file), pool.getParallelism());
+        return pool.submit(() -> {
+            ArrayList<ForkJoinTask<SynsetLines>> tasks = new ArrayList<ForkJoinTask<SynsetLines>>();
+            for (ByteBuffer chunk : chunks) tasks.add(ForkJoinTask.adapt(() -> parseSynsets(chunk)).fork());
+            ArrayList<SynsetLines> parsed = new ArrayList<SynsetLines>();
+            for (ForkJoinTask<SynsetLines> task : tasks) parsed.add(task.join());
+            return parsed;
+        });
+    }
+
+    // the edges of a hypernyms file, in file order
+    public static ForkJoinTask<Edges> hypernyms(String file, ForkJoinPool pool) throws IOException {
+        ByteBuffer[] chunks = split(CsvScanner.map(file), pool.getParallelism());
+        return pool.submit(() -> {
+            ArrayList<ForkJoinTask<Edges>> tasks = new ArrayList<ForkJoinTask<Edges>>();
+            for (ByteBuffer chunk : chunks) tasks.add(ForkJoinTask.adapt(() -> parseHypernyms(chunk)).fork());
+            ArrayList<Edges> parsed = new ArrayList<Edges>();
+            int count = 0;
+            for (ForkJoinTask<Edges> task : tasks) {
+                parsed.add(task.join());
+                count += parsed.get(parsed.size() - 1).count;
+            }
+            Edges all = new Edges();
+            all.from = new int[count];
+            all.to = new int[count];
+            for (Edges edges : parsed) {
+                System.arraycopy(edges.from, 0, all.from, all.count, edges.count);
+                System.arraycopy(edges.to, 0, all.to, all.count, edges.count);
+                all.count += edges.count;
+            }
+            return all;
+        });
+    }
+
+    // cut a buffer into about 4 * parallelism pieces, each ending just after a line break (or at the end)
+    public static ByteBuffer[] split(ByteBuffer buffer, int parallelism) {
+        int size = buffer.limit();
+        int target = Math.max(MIN_CHUNK, size / (4 * parallelism) + 1);
+        ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        int start = 0;
+        while (start < size) {
+            int end = Math.min(size, start + target);
+            while (end < size && buffer.get(end - 1) != '\n') end++;
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.position(start).limit(end);
+            chunks.add(chunk);
+            start = end;
+        }
+        return chunks.toArray(new ByteBuffer[0]);
+    }
+
+    // "id,word word ...,gloss" lines, the same way WordNet.getSynsets() reads them
+    private static SynsetLines parseSynsets(ByteBuffer chunk) {
+        SynsetLines parsed = new SynsetLines();
+        CsvScanner input = new CsvScanner(chunk);
+        CsvScanner.StringPool words = new CsvScanner.StringPool();
+        while (input.hasNext()) {
+            int synId = input.readInt();
+            input.skip(',');
+            do {
+                parsed.addWord(input.readWord(words));
+            } while (input.skip(' '));
+            parsed.endLine(synId);
+            input.skipLine();
+        }
+        return parsed;
+    }
+
+    // "id,hypernym,hypernym,..." lines, the same way WordNet.getHypernyms() reads them
+    private static Edges parseHypernyms(ByteBuffer chunk) {
+        Edges edges = new Edges();
+        CsvScanner input = new CsvScanner(chunk);
+        while (input.hasNext()) {
+            int hypID = input.readInt();
+            while (input.skip(',')) {
+                if (input.atFieldEnd()) continue;   // trailing comma
+                edges.add(hypID, input.readInt());
+            }
+            input.skipLine();
+        }
+        return edges;
+    }
+}
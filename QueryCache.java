@@ -0,0 +1,323 @@
+/*
+QueryCache is a bounded, thread-safe cache of shortest common ancestor
+results, keyed on the unordered pair of synset id sets of a query. Since the
+key is the pair of synset sets rather than the pair of nouns, two nouns that
+name the same synsets share an entry, and (a, b) shares one with (b, a).
+
+The cache is split into segments, each a LinkedHashMap in access order under
+its own lock. Eviction is either plain LRU or TinyLFU style: a small
+count-min sketch per segment estimates how often each key has been asked
+for recently, and a new key only displaces the least recently used entry if
+it has been asked for more often. That keeps a burst of one-off pairs from
+flushing the pairs that make up most of the traffic.
+
+invalidate() empties the cache and makes sure that no result computed on the
+old graph can still be put into it. invalidate(synsets) does the same for
+the entries a change below the given synsets can affect, and keeps the rest.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class QueryCache {
+    public enum Policy { LRU, TINY_LFU }
+
+    private static final int SEGMENTS = 16;        // at most; a cache smaller than this has fewer
+
+    private final Policy policy;
+    private final int maximumSize;
+    private final Segment[] segments;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // a cache of at most maximumSize query pairs
+    public QueryCache(int maximumSize, Policy policy) {
+        if (policy == null) throw new NullPointerException();
+        if (maximumSize < 1) throw new IllegalArgumentException("maximum size must be positive");
+        this.policy = policy;
+        this.maximumSize = maximumSize;
+        // a power of two no larger than maximumSize, so that every segment holds at least one entry
+        int count = Integer.highestOneBit(Math.min(SEGMENTS, maximumSize));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maximumSize / count + (i < maximumSize % count ? 1 : 0));
+        }
+    }
+
+    // the unordered pair of synset id sets one and two
+    public static Key key(Iterable<Integer> one, Iterable<Integer> two) {
+        return new Key(sorted(one), sorted(two));
+    }
+
+    // the unordered pair of synset id sets one and two, given as arrays; neither array is modified
+    public static Key key(int[] one, int[] two) {
+        int[] a = one.clone();
+        int[] b = two.clone();
+        Arrays.sort(a);
+        Arrays.sort(b);
+        return new Key(a, b);
+    }
+
+    // the cached length for key, or -1
+    public int length(Key key) {
+        Entry entry = segment(key).get(key);
+        int length = entry == null ? -1 : entry.length;
+        (length == -1 ? misses : hits).increment();
+        return length;
+    }
+
+    // the cached ancestor for key, or -1
+    public int ancestor(Key key) {
+        Entry entry = segment(key).get(key);
+        int ancestor = entry == null ? -1 : entry.ancestor;
+        (ancestor == -1 ? misses : hits).increment();
+        return ancestor;
+    }
+
+    // the cached length and ancestor for key, packed as AncestralPath.pack() does, or -1 unless both are
+    // cached; one lookup, counted once, for a caller that needs both
+    public long path(Key key) {
+        Entry entry = segment(key).get(key);
+        int length = entry == null ? -1 : entry.length;
+        int ancestor = entry == null ? -1 : entry.ancestor;
+        boolean hit = length != -1 && ancestor != -1;
+        (hit ? hits : misses).increment();
+        return hit ? AncestralPath.pack(length, ancestor) : -1;
+    }
+
+    // cache a length computed while generation() was still stamp
+    public void putLength(Key key, long stamp, int length) {
+        Entry entry = segment(key).entry(key, stamp);
+        if (entry != null) entry.length = length;
+    }
+
+    // cache an ancestor computed while generation() was still stamp
+    public void putAncestor(Key key, long stamp, int ancestor) {
+        Entry entry = segment(key).entry(key, stamp);
+        if (entry != null) entry.ancestor = ancestor;
+    }
+
+    // read before computing a result, and pass to putLength()/putAncestor() afterwards
+    public long generation() {
+        return generation.get();
+    }
+
+    // drop every entry; results computed before this call are not cached any more
+    public void invalidate() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) segment.clear();
+    }
+
+    // Drop every entry whose key holds one of synsets, after a change that moved the ancestors of those
+    // synsets and of no others. Also drops the entries of pairs without a common ancestor, whose length
+    // is the edge count of the graph, and entries still waiting for their ancestor, which may be one of
+    // those. Results computed before this call are not cached any more; costs one pass over the entries
+    public void invalidate(BitSet synsets) {
+        generation.incrementAndGet();
+        for (Segment segment : segments) segment.remove(synsets);
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    // number of cached pairs
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) size += segment.size();
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public String toString() {
+        return String.format("%s cache: %d/%d entries, %d hits, %d misses, %d evictions",
+                             policy, size(), maximumSize, hits(), misses(), evictions());
+    }
+
+    private Segment segment(Key key) {
+        int h = key.hash;
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private static int[] sorted(Iterable<Integer> ids) {
+        int n = 0;
+        for (Iterator<Integer> it = ids.iterator(); it.hasNext(); it.next()) n++;
+        int[] sorted = new int[n];
+        int i = 0;
+        for (int id : ids) sorted[i++] = id;
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // an unordered pair of sorted synset id sets, stored in a canonical order
+    public static class Key {
+        private final int[] first;
+        private final int[] second;
+        private final int hash;
+
+        private Key(int[] a, int[] b) {
+            if (Arrays.compare(a, b) <= 0) {
+                first = a;
+                second = b;
+            } else {
+                first = b;
+                second = a;
+            }
+            hash = 31 * Arrays.hashCode(first) + Arrays.hashCode(second);
+        }
+
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+            Key that = (Key) other;
+            return hash == that.hash && Arrays.equals(first, that.first) && Arrays.equals(second, that.second);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        // whether either set holds one of synsets
+        private boolean involves(BitSet synsets) {
+            for (int id : first) {
+                if (synsets.get(id)) return true;
+            }
+            for (int id : second) {
+                if (synsets.get(id)) return true;
+            }
+            return false;
+        }
+    }
+
+    // the results for one key; -1 until computed
+    private static class Entry {
+        private volatile int length = -1;
+        private volatile int ancestor = -1;
+    }
+
+    // one lock's worth of the cache
+    private class Segment {
+        private final int capacity;
+        private final LinkedHashMap<Key, Entry> entries;
+        private final FrequencySketch sketch;   // null for LRU
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+            this.sketch = policy == Policy.TINY_LFU ? new FrequencySketch(capacity) : null;
+        }
+
+        private synchronized Entry get(Key key) {
+            if (sketch != null) sketch.increment(key.hash);
+            return entries.get(key);
+        }
+
+        // the entry for key, created if the policy admits it; null if it does not or stamp is stale
+        private synchronized Entry entry(Key key, long stamp) {
+            if (stamp != generation.get()) return null;
+            Entry entry = entries.get(key);
+            if (entry != null) return entry;
+            if (entries.size() >= capacity) {
+                Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+                Key victim = eldest.next().getKey();
+                if (sketch != null && sketch.frequency(key.hash) <= sketch.frequency(victim.hash)) return null;
+                eldest.remove();
+                evictions.increment();
+            }
+            entry = new Entry();
+            entries.put(key, entry);
+            return entry;
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            if (sketch != null) sketch.clear();
+        }
+
+        // drop the entries invalidate(synsets) drops; the sketch keeps its counts, which are only estimates
+        private synchronized void remove(BitSet synsets) {
+            entries.entrySet().removeIf(e -> e.getValue().ancestor < 0 || e.getKey().involves(synsets));
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    // Count-min sketch of 4-bit counters, four per key, sixteen to a long. All counts are halved
+    // after every 10 * capacity increments, so the estimate follows recent traffic
+    private static class FrequencySketch {
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int samples;
+
+        private FrequencySketch(int capacity) {
+            int size = Integer.highestOneBit(Math.max(4, capacity - 1)) << 1;
+            table = new long[size];
+            mask = size - 1;
+            sampleSize = 10 * capacity;
+        }
+
+        private void increment(int hash) {
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int shift = shift(hash, i);
+                if (((table[index] >>> shift) & 0xF) < 15) table[index] += 1L << shift;
+            }
+            if (++samples == sampleSize) {
+                for (int i = 0; i < table.length; i++) table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                samples /= 2;
+            }
+        }
+
+        private int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                frequency = Math.min(frequency, (int) ((table[index(hash, i)] >>> shift(hash, i)) & 0xF));
+            }
+            return frequency;
+        }
+
+        private void clear() {
+            Arrays.fill(table, 0);
+            samples = 0;
+        }
+
+        // row i uses its own re-mix of the hash, so that keys colliding in one row rarely collide in all
+        private int index(int hash, int i) {
+            int h = (hash + i) * 0x9E3779B9;
+            return (h ^ (h >>> 15)) & mask;
+        }
+
+        private int shift(int hash, int i) {
+            int h = (hash ^ (i * 0x85EBCA6B)) * 0xC2B2AE35;
+            return ((h >>> 28) & 0xF) << 2;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+QueryMetrics collects what ShortestCommonAncestor and WordNet do per query:
+latency, vertices dequeued and edges relaxed by the search, the number of
+vertices it labelled (and so had to reset afterwards), cache hits and misses,
+and how long loading the synsets and the hypernyms took.
+
+Recording is lock-free: counters are LongAdders and the histograms are
+AtomicLongArrays, so any number of query threads can record at once. Nothing
+is recorded unless a QueryMetrics is handed to WordNet.enableMetrics() or
+ShortestCommonAncestor.withMetrics(); until then the only cost on the query
+path is a null check.
+
+The numbers can be read directly, pushed to a Reporter, or published over JMX
+with register(), which exposes them as a QueryMetricsMXBean.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class QueryMetrics implements QueryMetricsMXBean {
+
+    // receives the metrics whenever report() is called, e.g. to log them or forward them elsewhere
+    public interface Reporter {
+        void report(QueryMetrics metrics);
+    }
+
+    private final Histogram latency = new Histogram();     // nanoseconds per query
+    private final Histogram touched = new Histogram();     // vertices labelled per query
+    private final LongAdder verticesDequeued = new LongAdder();
+    private final LongAdder edgesRelaxed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private volatile long synsetLoadNanos;
+    private volatile long hypernymLoadNanos;
+
+    // one finished query: its latency, the vertices it took off either BFS queue, the edges it
+    // followed from them, and the vertices it labelled
+    public void recordQuery(long nanos, int dequeued, long relaxed, int labelled) {
+        latency.record(nanos);
+        touched.record(labelled);
+        verticesDequeued.add(dequeued);
+        edgesRelaxed.add(relaxed);
+    }
+
+    // one cache lookup by WordNet.sca() or WordNet.distance()
+    public void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    // time spent reading the synsets, and the hypernyms including building the graph
+    public void recordLoad(long synsetNanos, long hypernymNanos) {
+        synsetLoadNanos = synsetNanos;
+        hypernymLoadNanos = hypernymNanos;
+    }
+
+    // hand these metrics to reporter
+    public void report(Reporter reporter) {
+        reporter.report(this);
+    }
+
+    // publish these metrics on the platform MBean server as WordNet:type=QueryMetrics,name=<name>
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("WordNet:type=QueryMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // latency at quantile q (0 <= q <= 1), to within 1/16 of its value
+    public long latencyNanos(double q) {
+        return latency.quantile(q);
+    }
+
+    public long getQueries() {
+        return latency.count();
+    }
+
+    public long getMeanLatencyNanos() {
+        return latency.mean();
+    }
+
+    public long getLatencyP50Nanos() {
+        return latency.quantile(0.5);
+    }
+
+    public long getLatencyP99Nanos() {
+        return latency.quantile(0.99);
+    }
+
+    public long getLatencyP999Nanos() {
+        return latency.quantile(0.999);
+    }
+
+    public long getMaxLatencyNanos() {
+        return latency.max();
+    }
+
+    public long getVerticesDequeued() {
+        return verticesDequeued.sum();
+    }
+
+    public long getEdgesRelaxed() {
+        return edgesRelaxed.sum();
+    }
+
+    public long getMeanTouched() {
+        return touched.mean();
+    }
+
+    public long getMaxTouched() {
+        return touched.max();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public double getSynsetLoadMillis() {
+        return synsetLoadNanos / 1e6;
+    }
+
+    public double getHypernymLoadMillis() {
+        return hypernymLoadNanos / 1e6;
+    }
+
+    // start counting from zero again; the load times are kept
+    public void reset() {
+        latency.reset();
+        touched.reset();
+        verticesDequeued.reset();
+        edgesRelaxed.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    public String toString() {
+        long queries = getQueries();
+        return String.format("%d queries, latency p50 %d ns, p99 %d ns, p99.9 %d ns, max %d ns; "
+                             + "per query %.1f dequeued, %.1f relaxed, %d touched (max %d); "
+                             + "cache hit rate %.3f; load synsets %.1f ms, hypernyms %.1f ms",
+                             queries, getLatencyP50Nanos(), getLatencyP99Nanos(), getLatencyP999Nanos(), getMaxLatencyNanos(),
+                             (double) getVerticesDequeued() / Math.max(1, queries), (double) getEdgesRelaxed() / Math.max(1, queries),
+                             getMeanTouched(), getMaxTouched(), getCacheHitRate(), getSynsetLoadMillis(), getHypernymLoadMillis());
+    }
+
+    // Log-linear histogram of nonnegative longs, in the style of HdrHistogram: values below 16 get
+    // a bucket each, and every power of two above that is split into 16 equal buckets, so a bucket's
+    // lower bound is within 1/16 of any value in it. Under a thousand buckets cover every long
+    private static class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(bucket(value));
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        private static int bucket(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // smallest value that falls into bucket
+        private static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        }
+
+        private long count() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) count += counts.get(i);
+            return count;
+        }
+
+        private long mean() {
+            long count = count();
+            return count == 0 ? 0 : total.sum() / count;
+        }
+
+        private long max() {
+            return max.get();
+        }
+
+        // lower bound of the bucket holding the value at quantile q; concurrent records may be half seen
+        private long quantile(double q) {
+            long count = count();
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return lowerBound(i);
+            }
+            return max();
+        }
+
+        private void reset() {
+            for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+            total.reset();
+            max.reset();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+QueryMetricsMXBean is the management interface of QueryMetrics: the
+attributes QueryMetrics.register() publishes over JMX, readable from
+jconsole or any other JMX client while WordNet serves queries.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+public interface QueryMetricsMXBean {
+    long getQueries();
+    long getMeanLatencyNanos();
+    long getLatencyP50Nanos();
+    long getLatencyP99Nanos();
+    long getLatencyP999Nanos();
+    long getMaxLatencyNanos();
+    long getVerticesDequeued();
+    long getEdgesRelaxed();
+    long getMeanTouched();
+    long getMaxTouched();
+    long getCacheHits();
+    long getCacheMisses();
+    double getCacheHitRate();
+    double getSynsetLoadMillis();
+    double getHypernymLoadMillis();
+    void reset();
+}
@@ -30,306 +30,766 @@ Library and can be found here: https://algs4.cs.princeton.edu/code/
 import edu.princeton.cs.algs4.Bag;
 import edu.princeton.cs.algs4.Digraph;
 import edu.princeton.cs.algs4.In;
-import edu.princeton.cs.algs4.LinearProbingHashST;
-import edu.princeton.cs.algs4.Queue;
-import edu.princeton.cs.algs4.Topological;
+import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.StdOut;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 
 
 public class ShortestCommonAncestor {
-    private Digraph DAG;                    // digraph in question
-    private ArrayList<Integer> keysToNull; // keep track of vertex indexed array indices which have been modified
-    private Queue<Integer> firstQ;         // Queue for BFS on first vertex or subset
-    private Queue<Integer> secondQ;        // Queue for BFS on second vertex or subset
-    private int[] distV;                   // each index represents a vertex in graph, it's value represents the distance that vertex is from v
-    private int[] distW;                   // each index represents a vertex in graph, it's value represents the distance that vertex is from w
-
-    private LinearProbingHashST<Integer, Integer> distanceByReachables;
-
-
-    // constructor takes a rooted DAG as argument
-    public ShortestCommonAncestor(Digraph G) {
-        this.DAG = new Digraph(G);
-        Topological T = new Topological(DAG);
-        if (!T.hasOrder()) throw new IllegalArgumentException();
-        keysToNull = new ArrayList<Integer>();
-        firstQ = new Queue<Integer>();
-        secondQ = new Queue<Integer>();
-
-        // initialize all vertices to value -1 to indicate they have not been visited or passed in as parameters
-        distV = new int[DAG.V()];
-        for (int i = 0; i < distV.length; i++) {
-            distV[i] = -1;
+    private static final int NONE = Integer.MAX_VALUE; // no common ancestor found (yet)
+
+    private final CompactDigraph DAG;               // digraph in question, immutable
+    private final int[] offsets;                    // DAG.offsets(), read directly by the traversal
+    private final int[] targets;                    // DAG.targets()
+    private final int root;                         // the only vertex with no outgoing edge, -1 if there are several
+    private final Heights heights;                  // how far every vertex is from the top of the DAG
+    private final AncestorIndex index;              // precomputed ancestor lists that replace the search, or null
+    private final QueryMetrics metrics;             // where every query is recorded, or null to record nothing
+    private final Strategy requested;               // the strategy asked for by withStrategy(), or null for the default
+    private final Strategy strategy;                // the strategy queries use
+    private final ThreadLocal<Workspace> workspace; // per-thread BFS scratch state, so one instance can serve many threads
+    private final ThreadLocal<MultiSourceBfs> lanes; // per-thread scratch state of batch searches, created on first use
+
+    // one side of the search: its distance labels and its BFS queue. Every vertex is enqueued at most
+    // once per query, so a plain int array of length V serves as the queue and never wraps
+    private static class Frontier {
+        private final int[] dist;   // each index represents a vertex in graph, it's value represents the distance that vertex is from this side's sources
+        private final int[] queue;  // vertices in BFS order, queue[head..tail) are still to be expanded
+        private int head;
+        private int tail;
+
+        private Frontier(int V) {
+            // initialize all vertices to value -1 to indicate they have not been visited or passed in as parameters
+            dist = new int[V];
+            for (int i = 0; i < dist.length; i++) {
+                dist[i] = -1;
+            }
+            queue = new int[V];
         }
 
-        distW = new int[DAG.V()];
-        for (int i = 0; i < distW.length; i++) {
-            distW[i] = -1;
+        private boolean isEmpty() {
+            return head == tail;
         }
 
-        distanceByReachables = new LinearProbingHashST<Integer, Integer>();
+        private int size() {
+            return tail - head;
+        }
     }
 
-    // length of shortest ancestral path between v and w
-    public int length(int v, int w) {
-        checkVertex(v);
-        checkVertex(w);
+    // height[v] and longest[v] are the lengths of a shortest and of a longest path from v to a vertex with
+    // no outgoing edge: to the root, if the DAG has one. Engines grown from each other by withVertices()
+    // share the arrays, which have room to spare; only the newest of them, the one whose V is tail[0], may
+    // append to them, and no engine reads past its own V, so appending disturbs no query. withEdge()
+    // changes existing heights, so it works on a copy
+    private static class Heights {
+        private final int[] height;
+        private final int[] longest;
+        private final int[] tail;
+        private final int deepest;      // the largest longest[v] of the engine's vertices, -1 if it has none
+
+        private Heights(int[] height, int[] longest, int[] tail, int deepest) {
+            this.height = height;
+            this.longest = longest;
+            this.tail = tail;
+            this.deepest = deepest;
+        }
 
-        if (v == w) return 0;
-
-        // Operations on v
-        distV[v] = 0;               // v has distance 0 from itself
-        keysToNull.add(v);          // add v to list of indices to reset to -1 upon reentry to this function
-        firstQ.enqueue(v);          // place v in queue
-        while (!firstQ.isEmpty()) {
-            int nextInQueue = firstQ.dequeue();
-            for (int adjacent : DAG
-                    .adj(nextInQueue)) {     // for each vertex adjacent to v (or reachable from v)
-                distV[adjacent] = distV[nextInQueue]
-                        + 1; // set distance of that vertex from v to the number of BFS iterations that got us here
-                keysToNull.add(adjacent);                 // keep track of indices to reset to -1
-                firstQ.enqueue(adjacent);                 // place adjacent vertex on queue
+        // the heights of G, computed in reverse topological order: every parent before its children
+        private static Heights of(CompactDigraph G, int[] order) {
+            int[] height = new int[G.V()];
+            int[] longest = new int[G.V()];
+            int deepest = -1;
+            for (int k = order.length - 1; k >= 0; k--) {
+                deepest = Math.max(deepest, compute(order[k], G.offsets(), G.targets(), height, longest));
             }
+            return new Heights(height, longest, new int[] { G.V() }, deepest);
         }
 
-        // Operations on w
-        distW[w] = 0;
-        keysToNull.add(w);
-        secondQ.enqueue(w);
-        while (!secondQ.isEmpty()) {
-            int nextInQueue = secondQ.dequeue();
-            for (int adjacent : DAG.adj(nextInQueue)) {
-                distW[adjacent] = distW[nextInQueue] + 1;
-                keysToNull.add(adjacent);
-                secondQ.enqueue(adjacent);
-                if (distV[adjacent] != -1) {  // optimization: why not find distance here?
-                    distanceByReachables.put(adjacent, (distV[adjacent]) + distW[adjacent]);
-                }
+        // the heights of G, which grew from a DAG of V vertices by withVertex(), so every new vertex's parents
+        // come before it
+        private Heights grow(int V, CompactDigraph G) {
+            int[] h = height;
+            int[] l = longest;
+            int[] t = tail;
+            if (tail[0] != V || height.length < G.V()) {
+                int capacity = Math.max(G.V(), height.length + (height.length >> 1));
+                h = Arrays.copyOf(height, capacity);
+                l = Arrays.copyOf(longest, capacity);
+                t = new int[1];
             }
+            int deepest = this.deepest;
+            for (int v = V; v < G.V(); v++) deepest = Math.max(deepest, compute(v, G.offsets(), G.targets(), h, l));
+            t[0] = G.V();
+            return new Heights(h, l, t, deepest);
         }
 
-        int shortest = DAG.E();
+        // the heights of G, which is the DAG of these heights with an edge added from below[0], and below
+        // that vertex and every vertex below it, parents first: the only ones whose heights can change.
+        // An added edge can only lengthen a longest path, so deepest only grows
+        private Heights withEdge(CompactDigraph G, int[] below) {
+            int[] h = Arrays.copyOf(height, height.length);
+            int[] l = Arrays.copyOf(longest, longest.length);
+            int deepest = this.deepest;
+            for (int v : below) deepest = Math.max(deepest, compute(v, G.offsets(), G.targets(), h, l));
+            return new Heights(h, l, new int[] { G.V() }, deepest);
+        }
 
-        for (int key : distanceByReachables.keys()) { // for each index reachable from both v and w
-            if (distanceByReachables.get(key) < shortest) { // find the shortest distance
-                shortest = distanceByReachables.get(key);
+        // the heights of v from those of its parents; returns longest[v]
+        private static int compute(int v, int[] offsets, int[] targets, int[] height, int[] longest) {
+            int min = offsets[v] == offsets[v + 1] ? -1 : NONE;
+            int max = -1;
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                min = Math.min(min, height[targets[i]]);
+                max = Math.max(max, longest[targets[i]]);
             }
+            height[v] = min + 1;
+            longest[v] = max + 1;
+            return longest[v];
         }
+    }
 
-        // CLEAR WORK DONE IN CALL
-        for (int key : keysToNull) {
-            distV[key] = -1;
-            distW[key] = -1;
-        }
+    // How a query searches once its sources are seeded. Every query, whatever its inputs, runs through
+    // the same kernel with one of these: BIDIRECTIONAL grows the two sides in turn and stops as soon as
+    // no unseen ancestor can do better; INDEX looks up the ancestor lists of an AncestorIndex instead of
+    // touching the graph; BFS runs both sides to the end, with no early exit, as the reference the
+    // other two are checked against. An engine with an index uses INDEX unless told otherwise, any
+    // other engine BIDIRECTIONAL, and INDEX falls back to BIDIRECTIONAL when there is no index
+    public enum Strategy {
+        BFS {
+            void search(ShortestCommonAncestor sca, Workspace ws) {
+                sca.exhaustiveSearch(ws);
+            }
+        },
+        BIDIRECTIONAL {
+            void search(ShortestCommonAncestor sca, Workspace ws) {
+                sca.bidirectionalSearch(ws);
+            }
+        },
+        INDEX {
+            void search(ShortestCommonAncestor sca, Workspace ws) {
+                sca.indexSearch(ws);
+            }
+        };
 
-        for (int key : distanceByReachables.keys()) {
-            distanceByReachables.delete(key);
+        // leave the shortest ancestral path between the seeded sides in ws.shortest and ws.ancestor
+        abstract void search(ShortestCommonAncestor sca, Workspace ws);
+    }
+
+    // scratch state for a single query; reset to its initial state before each query returns.
+    // Only primitive arrays, so a query allocates nothing once a thread has its workspace
+    private static class Workspace {
+        private final Frontier first;   // BFS on first vertex or subset
+        private final Frontier second;  // BFS on second vertex or subset
+        private final int[] keysToNull; // vertices labelled by either side, keysToNull[0..touched) must be reset to -1
+        private int touched;
+
+        private int shortest;           // shortest ancestral path length found so far, NONE if none
+        private int ancestor;           // the common ancestor at the end of that path
+        private long unscanned;         // edges of vertices dequeued without scanning them, pruned by expand()
+
+        private Workspace(int V) {
+            first = new Frontier(V);
+            second = new Frontier(V);
+            keysToNull = new int[V];
+            shortest = NONE;
         }
+    }
 
-        keysToNull.clear();
 
-        return shortest;
+    // constructor takes a rooted DAG as argument
+    public ShortestCommonAncestor(Digraph G) {
+        // copy into compact form so that a traversal neither boxes nor allocates iterators
+        this(new CompactDigraph(G));
     }
 
-    // a shortest common ancestor of vertices v and w
-    public int ancestor(int v, int w) {
-        checkVertex(v);
-        checkVertex(w);
+    // a compact digraph is immutable, so it is shared rather than copied
+    public ShortestCommonAncestor(CompactDigraph G) {
+        this(G, null);
+    }
 
-        if (v == w) return v;
-
-        // Operations on v
-        distV[v] = 0;               // v has distance 0 from itself
-        keysToNull.add(v);          // add v to list of indices to reset to -1 upon reentry to this function
-        firstQ.enqueue(v);          // place v in queue
-        while (!firstQ.isEmpty()) {
-            int nextInQueue = firstQ.dequeue();
-            for (int adjacent : DAG.adj(nextInQueue)) {     // for each vertex adjacent to v (or reachable from v)
-                distV[adjacent] = distV[nextInQueue] + 1; // set distance of that vertex from v to the number of BFS iterations that got us here
-                keysToNull.add(adjacent);                 // keep track of indices to reset to -1
-                firstQ.enqueue(adjacent);                 // place adjacent vertex on queue
-            }
+    // queries are answered from index, which must have been built over G, instead of searching G
+    public ShortestCommonAncestor(CompactDigraph G, AncestorIndex index) {
+        int[] order = G.topologicalOrder();
+        if (order == null) throw new IllegalArgumentException();
+        if (index != null && index.V() != G.V()) throw new IllegalArgumentException("index is for another digraph");
+        this.index = index;
+        this.metrics = null;
+        requested = null;
+        strategy = index != null ? Strategy.INDEX : Strategy.BIDIRECTIONAL;
+        DAG = G;
+        offsets = G.offsets();
+        targets = G.targets();
+        final int V = G.V();
+        int sink = -1;
+        for (int v = 0; v < V; v++) {
+            if (offsets[v] != offsets[v + 1]) continue;
+            sink = sink == -1 ? v : -2;
         }
+        root = sink < 0 ? -1 : sink;
+        heights = Heights.of(G, order);
+        workspace = ThreadLocal.withInitial(() -> new Workspace(V));
+        lanes = new ThreadLocal<MultiSourceBfs>();
+    }
 
-        // Operations on w
-        distW[w] = 0;
-        keysToNull.add(w);
-        secondQ.enqueue(w);
-        while (!secondQ.isEmpty()) {
-            int nextInQueue = secondQ.dequeue();
-            for (int adjacent : DAG.adj(nextInQueue)) {
-                distW[adjacent] = distW[nextInQueue] + 1;
-                keysToNull.add(adjacent);
-                secondQ.enqueue(adjacent);
-                if (distV[adjacent] != -1) {  // optimization: why not find distance here?
-                    distanceByReachables.put(adjacent, (distV[adjacent]) + distW[adjacent]);
-                }
-            }
+    // an engine over G, answering from index with strategy requested (null for the default) and recording
+    // into metrics, that shares base's workspaces. G is base's DAG or a DAG that grew from it, and is not
+    // validated again
+    private ShortestCommonAncestor(ShortestCommonAncestor base, CompactDigraph G, int root, Heights heights,
+                                   AncestorIndex index, QueryMetrics metrics, Strategy requested) {
+        if (index != null && index.V() != G.V()) throw new IllegalArgumentException("index is for another digraph");
+        this.index = index;
+        this.metrics = metrics;
+        this.requested = requested;
+        if (requested == null || (requested == Strategy.INDEX && index == null)) {
+            strategy = index != null ? Strategy.INDEX : Strategy.BIDIRECTIONAL;
+        } else {
+            strategy = requested;
         }
+        DAG = G;
+        offsets = G.offsets();
+        targets = G.targets();
+        this.root = root;
+        this.heights = heights;
+        workspace = base.workspace;
+        lanes = base.lanes;
+    }
+
+    // a query engine over the same DAG that answers from index
+    public ShortestCommonAncestor withIndex(AncestorIndex index) {
+        return new ShortestCommonAncestor(this, DAG, root, heights, index, metrics, requested);
+    }
+
+    // a query engine over the same DAG that records every query into metrics, or records nothing if null
+    public ShortestCommonAncestor withMetrics(QueryMetrics metrics) {
+        return new ShortestCommonAncestor(this, DAG, root, heights, index, metrics, requested);
+    }
+
+    // a query engine over the same DAG that searches with strategy, or with the default if null;
+    // INDEX needs an index
+    public ShortestCommonAncestor withStrategy(Strategy strategy) {
+        if (strategy == Strategy.INDEX && index == null) throw new IllegalStateException("no ancestor index to search");
+        return new ShortestCommonAncestor(this, DAG, root, heights, index, metrics, strategy);
+    }
 
-        int ancestor = -999;
-        int shortest = DAG.E();
-        for (int key : distanceByReachables.keys()) { // for each index reachable from both v and w
-            if (distanceByReachables.get(key) <= shortest) { // find the shortest distance
-                shortest = distanceByReachables.get(key);
-                ancestor = key;
+    // A query engine over G, which is this DAG with vertices added by CompactDigraph.withVertex(), each
+    // with at least one parent; index must cover G, or be null. New leaves cannot close a cycle or add
+    // a root, so nothing is validated again and queries already running are not disturbed
+    ShortestCommonAncestor withVertices(CompactDigraph G, AncestorIndex index) {
+        if (G.V() < DAG.V()) throw new IllegalArgumentException();
+        return new ShortestCommonAncestor(this, G, root, heights.grow(DAG.V(), G), index, metrics, requested);
+    }
+
+    // A query engine over G, which is this DAG with one edge added from below[0] to an existing vertex, and
+    // which the caller has already checked for cycles. below is below[0] and every vertex below it, parents
+    // first, as G.descendants() lists them: the vertices whose ancestors the edge changes. index must be this
+    // engine's index brought up to date by AncestorIndex.withEdge(), or null. Only the heights of below are
+    // computed again; the root can only change if below[0] was one of several vertices without a hypernym,
+    // which happens at most once for each of those the DAG started with
+    ShortestCommonAncestor withEdge(CompactDigraph G, int[] below, AncestorIndex index) {
+        if (G.V() != DAG.V() || G.E() != DAG.E() + 1) throw new IllegalArgumentException();
+        int root = this.root;
+        if (root == -1 && offsets[below[0] + 1] == offsets[below[0]]) {
+            int[] o = G.offsets();
+            int sink = -1;
+            for (int v = 0; v < G.V(); v++) {
+                if (o[v] != o[v + 1]) continue;
+                sink = sink == -1 ? v : -2;
             }
+            root = sink < 0 ? -1 : sink;
         }
+        return new ShortestCommonAncestor(this, G, root, heights.withEdge(G, below), index, metrics, requested);
+    }
 
-        // CLEAR WORK DONE IN CALL
-        for (int key : keysToNull) {
-            distV[key] = -1;
-            distW[key] = -1;
-        }
+    // the DAG queries run on
+    CompactDigraph digraph() {
+        return DAG;
+    }
 
-        for (int key : distanceByReachables.keys()) {
-            distanceByReachables.delete(key);
-        }
+    // where queries are recorded, or null
+    public QueryMetrics metrics() {
+        return metrics;
+    }
+
+    // the ancestor index queries are answered from, or null
+    public AncestorIndex index() {
+        return index;
+    }
+
+    // the strategy queries search with
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    // the root of the DAG, an ancestor of every vertex, or -1 if the DAG is not rooted
+    public int root() {
+        return root;
+    }
+
+    // length of a shortest path from v up to a vertex with no outgoing edge; in a rooted DAG, distance to the root
+    public int height(int v) {
+        checkVertex(v);
+        return heights.height[v];
+    }
+
+    // Depth of v, counting vertices: 1 for a vertex with no outgoing edge, and otherwise one more than the
+    // depth of its deepest parent. The depth Similarity scores with
+    public int depth(int v) {
+        checkVertex(v);
+        return heights.longest[v] + 1;
+    }
 
-        keysToNull.clear();
+    // the largest depth of any vertex
+    public int maxDepth() {
+        return heights.deepest + 1;
+    }
+
+    // how similar v and w are by measure, from the same single search as path(v, w)
+    public double similarity(int v, int w, Similarity measure) {
+        if (measure == null) throw new NullPointerException();
+        return score(query(v, w), measure);
+    }
+
+    // how similar vertex subsets A and B are by measure, scored on a shortest ancestral path between them
+    public double similarity(Iterable<Integer> subsetA, Iterable<Integer> subsetB, Similarity measure) {
+        if (measure == null) throw new NullPointerException();
+        return score(query(subsetA, subsetB), measure);
+    }
+
+    // the same for subsets given as arrays
+    public double similarity(int[] subsetA, int[] subsetB, Similarity measure) {
+        if (measure == null) throw new NullPointerException();
+        return score(query(subsetA, subsetB), measure);
+    }
+
+    // the same for the subsets behind two ancestorDistances() results: a merge, no search
+    public double similarity(AncestorDistances a, AncestorDistances b, Similarity measure) {
+        if (a == null || b == null || measure == null) throw new NullPointerException();
+        AncestralPath path = a.path(b);
+        return score(path.exists() ? AncestralPath.pack(path.length(), path.ancestor()) : -1, measure);
+    }
+
+    // the score of a packed path
+    private double score(long path, Similarity measure) {
+        if (path == -1) return measure.score(-1, 0, maxDepth());
+        int ancestor = AncestralPath.ancestor(path);
+        return measure.score(AncestralPath.length(path), heights.longest[ancestor] + 1, maxDepth());
+    }
+
+    // a shortest ancestral path between v and w: its length and the common ancestor at its end
+    public AncestralPath path(int v, int w) {
+        return AncestralPath.unpack(query(v, w));
+    }
+
+    // a shortest ancestral path between vertex subsets A and B, given as arrays
+    public AncestralPath path(int[] subsetA, int[] subsetB) {
+        return AncestralPath.unpack(query(subsetA, subsetB));
+    }
+
+    // a shortest ancestral path between vertex subsets A and B
+    public AncestralPath path(Iterable<Integer> subsetA, Iterable<Integer> subsetB) {
+        return AncestralPath.unpack(query(subsetA, subsetB));
+    }
+
+    // length of shortest ancestral path between v and w
+    public int length(int v, int w) {
+        return length(query(v, w));
+    }
 
-        return ancestor;
+    // a shortest common ancestor of vertices v and w
+    public int ancestor(int v, int w) {
+        return ancestor(query(v, w));
     }
 
     // length of shortest ancestral path of vertex subsets A and B
     public int length(Iterable<Integer> subsetA, Iterable<Integer> subsetB) throws IOException {
-        // Output shortest length of all pairs
-        if (subsetA == null || subsetB == null) throw new NullPointerException();
-        Iterator<Integer> aIT = subsetA.iterator();
-        Iterator<Integer> bIT = subsetB.iterator();
-        if ((!aIT.hasNext()) || !bIT.hasNext()) throw new IllegalArgumentException();
-
-        // operations for first subset
-        for (int s : subsetA) {
-            distV[s] = 0;           // set all subset indices to visited reachable (0)
-            keysToNull.add(s);      // add to reset list
-            firstQ.enqueue(s);      // add all elements of subset to the queue
-        }
+        return length(query(subsetA, subsetB));
+    }
 
-        while (!firstQ.isEmpty()) {
-            int next = firstQ.dequeue();
-            for (int adjacent : DAG.adj(next)) {
-                distV[adjacent] = distV[next] + 1;
-                keysToNull.add(adjacent);
-                firstQ.enqueue(adjacent);
-            }
+    // a shortest common ancestor of vertex subsets A and B
+    public int ancestor(Iterable<Integer> subsetA, Iterable<Integer> subsetB) throws IOException {
+        return ancestor(query(subsetA, subsetB));
+    }
+
+    // length of shortest ancestral path of vertex subsets A and B, given as arrays
+    public int length(int[] subsetA, int[] subsetB) {
+        return length(query(subsetA, subsetB));
+    }
+
+    // a shortest common ancestor of vertex subsets A and B, given as arrays
+    public int ancestor(int[] subsetA, int[] subsetB) {
+        return ancestor(query(subsetA, subsetB));
+    }
+
+    // the length of a packed path as length() reports it: the number of edges of the DAG if there is none
+    private int length(long path) {
+        return path == -1 ? DAG.E() : AncestralPath.length(path);
+    }
+
+    // the ancestor of a packed path as ancestor() reports it: -999 if there is none
+    private static int ancestor(long path) {
+        return path == -1 ? -999 : AncestralPath.ancestor(path);
+    }
+
+    // Every query comes down to one of these three, which validate the input, seed the workspace and
+    // hand it to the kernel. The answer is packed into a long so that length() and ancestor() allocate
+    // nothing; path() unpacks it
+    private long query(int v, int w) {
+        checkVertex(v);
+        checkVertex(w);
+
+        if (v == w) return AncestralPath.pack(0, v);
+        long start = metrics == null ? 0 : System.nanoTime();
+        if (strategy == Strategy.INDEX) {
+            long path = index.query(v, w);      // one merge of two ancestor lists, no workspace needed
+            if (metrics != null) metrics.recordQuery(System.nanoTime() - start, 0, 0, 0);
+            return path;
         }
+        Workspace ws = workspace();
+        seedFirst(ws, v);
+        seedSecond(ws, w);
+        return search(ws, start);
+    }
 
-        // operations for second subset
-        for (int s : subsetB) {
-            distW[s] = 0;
-            keysToNull.add(s);
-            secondQ.enqueue(s);
+    private long query(int[] subsetA, int[] subsetB) {
+        checkSubsets(subsetA, subsetB);
+        long start = metrics == null ? 0 : System.nanoTime();
+        Workspace ws = workspace();
+        for (int s : subsetA) seedFirst(ws, s);
+        for (int s : subsetB) seedSecond(ws, s);
+        return search(ws, start);
+    }
+
+    // copied into arrays first, so that a bad vertex is caught before anything is seeded
+    private long query(Iterable<Integer> subsetA, Iterable<Integer> subsetB) {
+        if (subsetA == null || subsetB == null) throw new NullPointerException();
+        return query(toArray(subsetA), toArray(subsetB));
+    }
+
+    // The kernel: search from the seeded sides of ws with this engine's strategy, record the query,
+    // and leave the workspace clean for the next one
+    private long search(Workspace ws, long start) {
+        strategy.search(this, ws);
+        long path = ws.shortest == NONE ? -1 : AncestralPath.pack(ws.shortest, ws.ancestor);
+        if (metrics != null) record(ws, start);
+        clear(ws);
+        return path;
+    }
+
+    // every ancestor of the vertices in subset (the subset included) with its distance from the subset.
+    // Costs one full upward BFS; a batch of queries computes this once per subset and pairs the results
+    public AncestorDistances ancestorDistances(Iterable<Integer> subset) {
+        if (subset == null) throw new NullPointerException();
+        return ancestorDistances(toArray(subset));     // copied first, so a bad vertex is caught before anything is seeded
+    }
+
+    // the same for a subset given as an array
+    public AncestorDistances ancestorDistances(int[] subset) {
+        if (subset == null) throw new NullPointerException();
+        for (int s : subset) checkVertex(s);
+        long start = metrics == null ? 0 : System.nanoTime();
+        Workspace ws = workspace();
+        for (int s : subset) seedFirst(ws, s);
+        return ancestorDistances(ws, start);
+    }
+
+    // ancestorDistances() of every subset. The subsets are searched LANES at a time by one bit-parallel BFS,
+    // which scans an edge once per level for all of them; a lone subset gets the plain BFS above
+    public AncestorDistances[] ancestorDistances(int[][] subsets) {
+        if (subsets == null) throw new NullPointerException();
+        for (int[] subset : subsets) {
+            if (subset == null) throw new NullPointerException();
         }
+        AncestorDistances[] all = new AncestorDistances[subsets.length];
+        if (subsets.length == 1) {
+            all[0] = ancestorDistances(subsets[0]);
+            return all;
+        }
+        MultiSourceBfs bfs = lanes();
+        for (int first = 0; first < subsets.length; first += MultiSourceBfs.LANES) {
+            int count = Math.min(MultiSourceBfs.LANES, subsets.length - first);
+            System.arraycopy(bfs.search(DAG, subsets, first, count), 0, all, first, count);
+        }
+        return all;
+    }
 
-        while (!secondQ.isEmpty()) {
-            int nextInQueue = secondQ.dequeue();
-            for (int adjacent : DAG.adj(nextInQueue)) {
-                distW[adjacent] = distW[nextInQueue] + 1;
-                keysToNull.add(adjacent);
-                secondQ.enqueue(adjacent);
-                if (distV[adjacent] != -1) { // find distance here, reduce iterations later
-                    distanceByReachables.put(adjacent, (distV[adjacent]) + distW[adjacent]);
-                }
-            }
+    // finish ancestorDistances() from the seeded first side of ws
+    private AncestorDistances ancestorDistances(Workspace ws, long start) {
+        Frontier first = ws.first;
+        if (first.tail == 0) throw new IllegalArgumentException();
+        while (!first.isEmpty()) expand(ws, first, ws.second);
+
+        int[] vertices = Arrays.copyOf(first.queue, first.tail);
+        Arrays.sort(vertices);
+        int[] distances = new int[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            distances[i] = first.dist[vertices[i]];
         }
+        if (metrics != null) record(ws, start);
+        clear(ws);
+        return new AncestorDistances(vertices, distances);
+    }
 
-        int shortest = DAG.E();
+    // length of shortest ancestral path between the subsets behind two ancestorDistances() results
+    public int length(AncestorDistances a, AncestorDistances b) {
+        if (a == null || b == null) throw new NullPointerException();
+        int shortest = a.length(b);
+        return shortest == -1 ? DAG.E() : shortest;
+    }
 
-        for (int key : distanceByReachables.keys()) { // for each index reachable from both v and w
-            if (distanceByReachables.get(key) < shortest) { // find the shortest distance
-                shortest = distanceByReachables.get(key);
-            }
-        }
+    // a shortest common ancestor of the subsets behind two ancestorDistances() results
+    public int ancestor(AncestorDistances a, AncestorDistances b) {
+        if (a == null || b == null) throw new NullPointerException();
+        int ancestor = a.ancestor(b);
+        return ancestor == -1 ? -999 : ancestor;
+    }
 
-        // CLEAR WORK DONE IN CALL
-        for (int key : keysToNull) {
-            distV[key] = -1;
-            distW[key] = -1;
+    // a shortest ancestral path between the subsets behind two ancestorDistances() results
+    public AncestralPath path(AncestorDistances a, AncestorDistances b) {
+        if (a == null || b == null) throw new NullPointerException();
+        return a.path(b);
+    }
+
+    // this thread's workspace, replaced by a larger one first if the DAG has grown past it
+    private Workspace workspace() {
+        Workspace ws = workspace.get();
+        int V = DAG.V();
+        if (ws.keysToNull.length < V) {
+            ws = new Workspace(Math.max(V, ws.keysToNull.length + (ws.keysToNull.length >> 3)));
+            workspace.set(ws);
         }
+        return ws;
+    }
 
-        for (int key : distanceByReachables.keys()) {
-            distanceByReachables.delete(key);
+    // this thread's batch search state, created or replaced by a larger one if the DAG has outgrown it
+    private MultiSourceBfs lanes() {
+        MultiSourceBfs bfs = lanes.get();
+        int V = DAG.V();
+        if (bfs == null || bfs.capacity() < V) {
+            bfs = new MultiSourceBfs(bfs == null ? V : Math.max(V, bfs.capacity() + (bfs.capacity() >> 3)));
+            lanes.set(bfs);
         }
+        return bfs;
+    }
 
-        keysToNull.clear();
+    // place a vertex of the first subset at distance 0
+    private void seedFirst(Workspace ws, int s) {
+        Frontier first = ws.first;
+        if (first.dist[s] != -1) return;  // listed twice
+        first.dist[s] = 0;
+        ws.keysToNull[ws.touched++] = s;
+        first.queue[first.tail++] = s;
+    }
 
-        return shortest;
+    // place a vertex of the second subset at distance 0; seed the first subset before this one
+    private void seedSecond(Workspace ws, int s) {
+        Frontier second = ws.second;
+        if (second.dist[s] != -1) return;
+        second.dist[s] = 0;
+        if (ws.first.dist[s] == -1) ws.keysToNull[ws.touched++] = s;
+        else offer(ws, s);                // s is in both subsets (or an ancestor of the first)
+        second.queue[second.tail++] = s;
     }
 
-    // a shortest common ancestor of vertex subsets A and B
-    public int ancestor(Iterable<Integer> subsetA, Iterable<Integer> subsetB) throws IOException {
-        // Output shortest common ancestor of all pairs
-        if (subsetA == null || subsetB == null) throw new NullPointerException();
-        Iterator<Integer> aIT = subsetA.iterator();
-        Iterator<Integer> bIT = subsetB.iterator();
-        if ((!aIT.hasNext()) || !bIT.hasNext()) throw new IllegalArgumentException();
-
-        // operations for first subset
-        for (int s : subsetA) {
-            distV[s] = 0;           // set all subset indices to visited reachable (0)
-            keysToNull.add(s);      // add to reset list
-            firstQ.enqueue(s);      // add all elements of subset to the queue
-        }
+    // Plain BFS: the first side climbs to the end, then the second, and every vertex both reach is offered.
+    // It visits the whole upward closure of both subsets every time
+    private void exhaustiveSearch(Workspace ws) {
+        while (!ws.first.isEmpty()) expand(ws, ws.first, ws.second);
+        while (!ws.second.isEmpty()) expand(ws, ws.second, ws.first);
+    }
 
-        while (!firstQ.isEmpty()) {
-            int next = firstQ.dequeue();
-            for (int adjacent : DAG.adj(next)) {
-                distV[adjacent] = distV[next] + 1;
-                keysToNull.add(adjacent);
-                firstQ.enqueue(adjacent);
+    // Bidirectional search. Both BFSs climb the DAG one whole level at a time, always advancing the
+    // shallower one. After a side has finished level d, every vertex within distance d of its sources
+    // carries its exact distance, so any common ancestor not yet seen by both sides has an ancestral
+    // path of at least (d + 1) for some side that can still grow. Once the best path found is no longer
+    // than that, no unseen ancestor can beat it and the search stops, usually long before either side
+    // has visited the whole upward closure of its sources.
+    //
+    // The heights prune the search further. Let h(B) be the lowest height in the second subset. Any vertex
+    // z above x, x included, is at most longest[x] - dist(x, z) high, and the second subset is at least
+    // h(B) - height[z] below it, so a path from the first subset through x to z and down to the second is
+    // at least d + max(0, h(B) - longest[x]) long, d being the distance of x. If that is no better than the
+    // best path found, nothing reached through x can improve on it: x is not labelled or queued, or, if it
+    // was queued before that path was found, its edges are not scanned. Only paths that could never be
+    // reported are cut, so the length is exactly the one the search without pruning finds
+    private void bidirectionalSearch(Workspace ws) {
+        Frontier first = ws.first;
+        Frontier second = ws.second;
+        int heightV = lowest(first, heights.height);
+        int heightW = lowest(second, heights.height);
+        int[] longest = heights.longest;
+        int depthV = 0;
+        int depthW = 0;
+        while (true) {
+            boolean growV = !first.isEmpty();
+            boolean growW = !second.isEmpty();
+            if (!growV && !growW) return;
+
+            int bound = Math.min(growV ? depthV + 1 : NONE, growW ? depthW + 1 : NONE);
+            if (ws.shortest <= bound) return;
+
+            if (growV && (!growW || depthV < depthW
+                    || (depthV == depthW && first.size() <= second.size()))) {
+                expand(ws, first, second, longest, heightW);
+                depthV++;
+            } else {
+                expand(ws, second, first, longest, heightV);
+                depthW++;
             }
         }
+    }
 
-        // operations for second subset
-        for (int s : subsetB) {
-            distW[s] = 0;
-            keysToNull.add(s);
-            secondQ.enqueue(s);
-        }
+    // the lowest height among the seeded vertices of side
+    private static int lowest(Frontier side, int[] height) {
+        int lowest = NONE;
+        for (int k = 0; k < side.tail; k++) lowest = Math.min(lowest, height[side.queue[k]]);
+        return lowest;
+    }
 
-        while (!secondQ.isEmpty()) {
-            int nextInQueue = secondQ.dequeue();
-            for (int adjacent : DAG.adj(nextInQueue)) {
-                distW[adjacent] = distW[nextInQueue] + 1;
-                keysToNull.add(adjacent);
-                secondQ.enqueue(adjacent);
-                if (distV[adjacent] != -1) { // find distance here, reduce iterations later
-                    distanceByReachables.put(adjacent, (distV[adjacent]) + distW[adjacent]);
+    // The same answer from the ancestor index: mark every ancestor of the first subset with its distance,
+    // then look up every ancestor of the second subset. No graph traversal at all
+    private void indexSearch(Workspace ws) {
+        int[] starts = index.starts();
+        int[] ends = index.ends();
+        int[] ancestors = index.ancestors();
+        short[] distances = index.distances();
+        Frontier first = ws.first;
+        Frontier second = ws.second;
+        for (int k = 0; k < first.tail; k++) {
+            int s = first.queue[k];
+            for (int i = starts[s]; i < ends[s]; i++) {
+                int x = ancestors[i];
+                if (first.dist[x] == -1) {
+                    if (second.dist[x] == -1) ws.keysToNull[ws.touched++] = x;
+                } else if (first.dist[x] <= distances[i]) continue;
+                first.dist[x] = distances[i];
+            }
+        }
+        for (int k = 0; k < second.tail; k++) {
+            int s = second.queue[k];
+            for (int i = starts[s]; i < ends[s]; i++) {
+                int x = ancestors[i];
+                if (first.dist[x] == -1) continue;
+                int length = first.dist[x] + distances[i];
+                if (length < ws.shortest) {
+                    ws.shortest = length;
+                    ws.ancestor = x;
                 }
             }
         }
-        int ancestor = -999;
-        int shortest = DAG.E();
-        for (int key : distanceByReachables.keys()) { // for each vertex reachable from v and w
-            if (distanceByReachables.get(key) <= shortest) { // find the shortest distance
-                shortest = distanceByReachables.get(key);
-                ancestor = key;
+    }
+
+    // advance one side of the search by exactly one BFS level
+    private void expand(Workspace ws, Frontier side, Frontier other) {
+        int[] dist = side.dist;
+        int[] queue = side.queue;
+        int end = side.tail;
+        while (side.head < end) {
+            int next = queue[side.head++];
+            for (int i = offsets[next]; i < offsets[next + 1]; i++) {
+                int adjacent = targets[i];
+                if (dist[adjacent] != -1) continue;     // already reached by a path at least as short
+                dist[adjacent] = dist[next] + 1;
+                if (other.dist[adjacent] == -1) ws.keysToNull[ws.touched++] = adjacent;
+                else offer(ws, adjacent);               // reachable from both sides
+                queue[side.tail++] = adjacent;
             }
         }
+    }
 
-        // CLEAR WORK DONE IN CALL
-        for (int key : keysToNull) {
-            distV[key] = -1;
-            distW[key] = -1;
+    // expand() for the bidirectional search, leaving out every vertex that cannot lead to a path shorter than
+    // the best so far when the other side's sources are at least otherHeight high
+    private void expand(Workspace ws, Frontier side, Frontier other, int[] longest, int otherHeight) {
+        int[] dist = side.dist;
+        int[] queue = side.queue;
+        int end = side.tail;
+        while (side.head < end) {
+            int next = queue[side.head++];
+            if (dist[next] + Math.max(0, otherHeight - longest[next]) >= ws.shortest) {
+                ws.unscanned += offsets[next + 1] - offsets[next];
+                continue;
+            }
+            int d = dist[next] + 1;
+            for (int i = offsets[next]; i < offsets[next + 1]; i++) {
+                int adjacent = targets[i];
+                if (dist[adjacent] != -1) continue;
+                int lower = d + Math.max(0, otherHeight - longest[adjacent]);
+                if (lower >= ws.shortest) continue;
+                dist[adjacent] = d;
+                if (other.dist[adjacent] == -1) ws.keysToNull[ws.touched++] = adjacent;
+                else offer(ws, adjacent);
+                queue[side.tail++] = adjacent;
+            }
         }
+    }
 
-        for (int key : distanceByReachables.keys()) {
-            distanceByReachables.delete(key);
+    // record a vertex reachable from both sides if it gives a shorter ancestral path
+    private void offer(Workspace ws, int x) {
+        int length = ws.first.dist[x] + ws.second.dist[x];
+        if (length < ws.shortest) {
+            ws.shortest = length;
+            ws.ancestor = x;
         }
+    }
 
-        keysToNull.clear();
+    // record a query that started at start into metrics; the workspace must not have been cleared yet.
+    // Every vertex in queue[0..head) of a side was dequeued and had its edges scanned, except for those
+    // the pruned bidirectional search left out, whose edges add up to ws.unscanned
+    private void record(Workspace ws, long start) {
+        long relaxed = relaxed(ws.first) + relaxed(ws.second) - ws.unscanned;
+        metrics.recordQuery(System.nanoTime() - start, ws.first.head + ws.second.head, relaxed, ws.touched);
+    }
 
-        return ancestor;
+    private long relaxed(Frontier side) {
+        long relaxed = 0;
+        for (int k = 0; k < side.head; k++) {
+            int v = side.queue[k];
+            relaxed += offsets[v + 1] - offsets[v];
+        }
+        return relaxed;
     }
 
+    // CLEAR WORK DONE IN CALL
+    private void clear(Workspace ws) {
+        int[] distV = ws.first.dist;
+        int[] distW = ws.second.dist;
+        for (int i = 0; i < ws.touched; i++) {
+            int key = ws.keysToNull[i];
+            distV[key] = -1;
+            distW[key] = -1;
+        }
+        ws.touched = 0;
+        ws.unscanned = 0;
+        ws.first.head = ws.first.tail = 0;
+        ws.second.head = ws.second.tail = 0;
+        ws.shortest = NONE;
+    }
+
+
+    // the vertices of subset, which must not be null
+    private static int[] toArray(Iterable<Integer> subset) {
+        int[] vertices = new int[8];
+        int n = 0;
+        for (Integer s : subset) {
+            if (s == null) throw new NullPointerException();
+            if (n == vertices.length) vertices = Arrays.copyOf(vertices, 2 * n);
+            vertices[n++] = s;
+        }
+        return Arrays.copyOf(vertices, n);
+    }
+
+    // both subsets non-null and non-empty, and every vertex in range
+    private void checkSubsets(int[] subsetA, int[] subsetB) {
+        if (subsetA == null || subsetB == null) throw new NullPointerException();
+        if (subsetA.length == 0 || subsetB.length == 0) throw new IllegalArgumentException();
+        for (int s : subsetA) checkVertex(s);
+        for (int s : subsetB) checkVertex(s);
+    }
 
     public void checkVertex(int v) {
         int max = DAG.V();
-        if (v < 0 || v > max) throw new IndexOutOfBoundsException();
+        if (v < 0 || v >= max) throw new IndexOutOfBoundsException();
     }
 
 
@@ -346,8 +806,9 @@ public class ShortestCommonAncestor {
             while (!StdIn.isEmpty()) {
                 int v = StdIn.readInt();
                 int w = StdIn.readInt();
-                int length   = sca.length(v, w);
-                int ancestor = sca.ancestor(v, w);
+                AncestralPath path = sca.path(v, w);   // one search for both
+                int length   = path.exists() ? path.length() : G.E();
+                int ancestor = path.exists() ? path.ancestor() : -999;
                 StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
             }
         }
@@ -386,5 +847,30 @@ public class ShortestCommonAncestor {
         StdOut.println("length: " + sca.length(b1, b2));
         StdOut.println("ancestor: " + sca.ancestor(b1, b2));
 
+        // a bad vertex must be rejected before it can leave the thread's workspace half seeded
+        StdOut.println("Testing Case: 3");
+        Bag<Integer> bad = new Bag<Integer>();
+        bad.add(numVertices);     // a Bag iterates last added first, so d is seeded before the bad vertex is seen
+        bad.add(d);
+        try {
+            sca.ancestorDistances(bad);
+            StdOut.println("out of range vertex accepted");
+        } catch (IndexOutOfBoundsException expected) {
+            StdOut.println("out of range vertex rejected");
+        }
+        Bag<Integer> withNull = new Bag<Integer>();
+        withNull.add(null);
+        withNull.add(d);
+        try {
+            sca.ancestorDistances(withNull);
+            StdOut.println("null vertex accepted");
+        } catch (NullPointerException expected) {
+            StdOut.println("null vertex rejected");
+        }
+        AncestorDistances fromE = sca.ancestorDistances(new int[] { e });
+        StdOut.println("next query still correct: " + (fromE.size() == 3 && fromE.distanceTo(e) == 0
+                       && fromE.distanceTo(c) == 1 && fromE.distanceTo(a) == 2 && fromE.distanceTo(d) == -1
+                       && sca.length(d, e) == 4 && sca.ancestor(d, e) == a));
+
     }
 }
@@ -0,0 +1,54 @@
+/*
+Similarity is a semantic similarity measure over the hypernym DAG, scored
+from one shortest ancestral path: its length, and the depth of the common
+ancestor at its end. ShortestCommonAncestor finds both in a single search
+and keeps every synset's depth, so a score costs what length() costs,
+instead of a sca(), a distance() and depth lookups searched one by one.
+
+Depths count vertices, as the usual definitions do: the root has depth 1,
+and a synset is one deeper than its deepest hypernym. maxDepth is the
+largest depth in the DAG.
+
+    PATH              1 / (length + 1)
+    LEACOCK_CHODOROW  -ln((length + 1) / (2 maxDepth))
+    WU_PALMER         2 depth(ancestor) / (length + 2 depth(ancestor))
+
+Two synsets without a common ancestor score 0 on every measure. Between
+sets of synsets, such as the senses of two nouns, the score is that of the
+shortest ancestral path between the sets, the one distance() and sca()
+report. Where several common ancestors end shortest paths, WU_PALMER
+depends on which of them is taken: WordNet.similarity() and the
+similarities() of a noun and its candidates score the one sca() reports,
+the similarities() of a list of nouns the one ancestors() reports, and the
+two can differ on such ties just as sca() and ancestors() can.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+public enum Similarity {
+    PATH {
+        double of(int length, int ancestorDepth, int maxDepth) {
+            return 1.0 / (length + 1);
+        }
+    },
+    LEACOCK_CHODOROW {
+        double of(int length, int ancestorDepth, int maxDepth) {
+            return -Math.log((length + 1) / (2.0 * maxDepth));
+        }
+    },
+    WU_PALMER {
+        double of(int length, int ancestorDepth, int maxDepth) {
+            return 2.0 * ancestorDepth / (length + 2 * ancestorDepth);
+        }
+    };
+
+    // the score of a shortest ancestral path of the given length, -1 if there is none, ending at a common
+    // ancestor of the given depth, in a DAG whose deepest vertex has depth maxDepth
+    public double score(int length, int ancestorDepth, int maxDepth) {
+        if (length < -1 || ancestorDepth < 0 || maxDepth < ancestorDepth) throw new IllegalArgumentException();
+        return length == -1 ? 0 : of(length, ancestorDepth, maxDepth);
+    }
+
+    abstract double of(int length, int ancestorDepth, int maxDepth);
+}
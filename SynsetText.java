@@ -0,0 +1,102 @@
+/*
+SynsetText reads the words of a synset straight out of the synsets file. It
+keeps the file mapped and one int per synset, the byte offset where the
+synset's word field starts, and decodes a synset only when it is asked for,
+so a WordNet that mostly answers distance() and isNoun() never pays for
+synset strings: not at load, not on the heap, and not in resident memory,
+since the pages of the file are only read in when sca() touches them.
+
+NounDictionary uses it in place of its synset sections when the dictionary
+is built lazily. The strings are the ones NounDictionary would build: the
+words of the line, last one first, run together.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class SynsetText {
+    private final ByteBuffer file;     // the synsets file, usually memory-mapped
+    private final int[] starts;        // starts[id] is the offset of the first word of synset id
+
+    // the synsets of file, synset id having its words at starts[id]; starts is kept, not copied
+    public SynsetText(ByteBuffer file, int[] starts) {
+        for (int start : starts) {
+            if (start < 0 || start >= file.limit()) throw new IllegalArgumentException("word field at " + start + " is outside the file");
+        }
+        this.file = file;
+        this.starts = starts;
+    }
+
+    // number of synsets
+    public int size() {
+        return starts.length;
+    }
+
+    // number of words in synset id
+    public int wordCount(int id) {
+        int start = starts[id];
+        int end = end(start);
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (file.get(i) == ' ') count++;
+        }
+        return count;
+    }
+
+    // the words of synset id, in the order of its line
+    public String[] words(int id) {
+        int start = starts[id];
+        int end = end(start);
+        int count = wordCount(id);
+        String[] words = new String[count];
+        int from = start;
+        for (int k = 0; k < count; k++) {
+            int to = from;
+            while (to < end && file.get(to) != ' ') to++;
+            words[k] = decode(from, to);
+            from = to + 1;
+        }
+        return words;
+    }
+
+    // the synset as sca() reports it: its words, last one first, run together
+    public String synset(int id) {
+        int start = starts[id];
+        int to = end(start);
+        byte[] bytes = new byte[to - start];
+        int at = 0;
+        for (int from = to; from >= start; from--) {
+            if (from == start || file.get(from - 1) == ' ') {
+                for (int i = from; i < to; i++) bytes[at++] = file.get(i);
+                to = from - 1;
+            }
+        }
+        return new String(bytes, 0, at, StandardCharsets.UTF_8);
+    }
+
+    // heap taken by the offsets; the file itself is mapped, not held
+    public long bytes() {
+        return 4L * starts.length;
+    }
+
+    // offset just past the word field that starts at start
+    private int end(int start) {
+        int end = start;
+        int limit = file.limit();
+        while (end < limit) {
+            byte b = file.get(end);
+            if (b == ',' || b == '\n' || b == '\r') break;
+            end++;
+        }
+        return end;
+    }
+
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) bytes[i - from] = file.get(i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -29,24 +29,41 @@ Library and can be found here: https://algs4.cs.princeton.edu/code/
 
 
 
-import edu.princeton.cs.algs4.Bag;
-import edu.princeton.cs.algs4.Digraph;
 import edu.princeton.cs.algs4.LinearProbingHashST;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class WordNet {
-    private Digraph wordnet;
-    private LinearProbingHashST<Integer, Bag<String>> synsetsByID;
-    private LinearProbingHashST<String, Bag<Integer>> idsByNoun;
+    private static final int SNAPSHOT_MAGIC = 0x574E5350;   // "WNSP"
+    private static final int SNAPSHOT_VERSION = 2;
+
+    // once constructed, a WordNet changes its fields only while holding its monitor; queries read them without it
+    private volatile CompactDigraph wordnet;
+    private volatile int synsetCount;      // number of synsets read by getSynsets(), which sizes the hypernym graph
+    private volatile ShortestCommonAncestor sca;  // built once per graph and shared by every query, on any thread
+    private volatile QueryCache cache;     // results of sca() and distance(), null unless enableCache() was called
+    private volatile QueryMetrics metrics; // where queries are recorded, null unless enableMetrics() was called
+    private long synsetLoadNanos;          // time the synsets took to load, for metrics
+    private long hypernymLoadNanos;        // time the hypernyms took to load and build into a graph
+    private volatile NounDictionary dictionary;   // nouns to synset ids and synset ids to words
 
    // constructor takes the name of the two input files
    public WordNet(String synsets, String hypernyms) throws IOException /* "throw" required for FileReader*/ {
        if (synsets == null || hypernyms == null) throw new NullPointerException();
-       synsetsByID = new LinearProbingHashST<>();
-       idsByNoun = new LinearProbingHashST<>();
 
        // Read in all synsets
        getSynsets(synsets);
@@ -56,15 +73,62 @@ public class WordNet {
 
    }
 
+   // the same WordNet as WordNet(synsets, hypernyms), but both files are split into line-aligned
+   // chunks that are parsed concurrently on pool; the chunks are merged in file order
+   public WordNet(String synsets, String hypernyms, ForkJoinPool pool) throws IOException {
+       if (synsets == null || hypernyms == null || pool == null) throw new NullPointerException();
+
+       // both files are parsed at the same time
+       ForkJoinTask<ArrayList<ParallelLoader.SynsetLines>> synsetLines = ParallelLoader.synsets(synsets, pool);
+       ForkJoinTask<ParallelLoader.Edges> edges = ParallelLoader.hypernyms(hypernyms, pool);
+
+       long start = System.nanoTime();
+       int lineCounter = 0;
+       NounDictionary.Builder nouns = new NounDictionary.Builder();
+       for (ParallelLoader.SynsetLines chunk : synsetLines.join()) {
+           int word = 0;
+           for (int line = 0; line < chunk.lines; line++) {
+               nouns.beginSynset(chunk.ids[line]);
+               for (; word < chunk.wordEnds[line]; word++) nouns.addWord(chunk.words[word]);
+           }
+           lineCounter += chunk.lines;
+       }
+       dictionary = nouns.build(false);
+       synsetCount = lineCounter;
+       synsetLoadNanos = System.nanoTime() - start;
+
+       // the hypernyms were parsed meanwhile, so their time is mostly the wait that remains
+       start = System.nanoTime();
+       ParallelLoader.Edges hypernymEdges = edges.join();
+       setHypernyms(hypernymEdges.from, hypernymEdges.to, hypernymEdges.count);
+       hypernymLoadNanos = System.nanoTime() - start;
+   }
+
+   // used by load(), which fills in the fields itself
+   private WordNet() {
+   }
+
+   // the same WordNet as WordNet(synsets, hypernyms), except that the text of the synsets is not
+   // loaded: the synsets file stays mapped and a synset is decoded from it only when sca() returns
+   // it. Nouns, distances and outcasts cost the same; the dictionary is about a quarter smaller
+   public static WordNet lazy(String synsets, String hypernyms) throws IOException {
+       if (synsets == null || hypernyms == null) throw new NullPointerException();
+       WordNet wordnet = new WordNet();
+       wordnet.readSynsets(synsets, true);
+       wordnet.getHypernyms(hypernyms);
+       return wordnet;
+   }
+
    // all WordNet nouns
    public Iterable<String> nouns() {
-        return idsByNoun.keys();
+        return dictionary.nouns();
    }
 
 
    // is the word a WordNet noun?
    public boolean isNoun(String word) {
-       return idsByNoun.contains(word);
+       if (word == null) throw new NullPointerException();
+       return dictionary.contains(word);
    }
 
 
@@ -72,97 +136,555 @@ public class WordNet {
    // of noun1 and noun2 (defined below)
    public String sca(String noun1, String noun2) throws IOException {
        if (noun1 == null || noun2 == null) throw new NullPointerException();
-       if (!idsByNoun.contains(noun1) || !idsByNoun.contains(noun2)) throw new IllegalArgumentException();
-       ShortestCommonAncestor SCA = new ShortestCommonAncestor(wordnet);
-       Bag<Integer> one = idsByNoun.get(noun1);
-       Bag<Integer> two = idsByNoun.get(noun2);
-
-       int shortestCommonAncesotr = SCA.ancestor(one, two);
-
-       return String.join("", synsetsByID.get(shortestCommonAncesotr));
+       int[] one = ids(noun1);
+       int[] two = ids(noun2);
+
+       QueryCache results = cache;
+       if (results == null) return synsetString(sca.ancestor(one, two));
+
+       QueryCache.Key key = QueryCache.key(one, two);
+       int shortestCommonAncesotr = results.ancestor(key);
+       QueryMetrics recorder = metrics;
+       if (recorder != null) recorder.recordCacheLookup(shortestCommonAncesotr != -1);
+       if (shortestCommonAncesotr == -1) {
+           // the search finds the length as well, so distance() of the same pair is a hit afterwards
+           long stamp = results.generation();
+           ShortestCommonAncestor engine = sca;
+           AncestralPath path = engine.path(one, two);
+           shortestCommonAncesotr = path.exists() ? path.ancestor() : -999;
+           results.putAncestor(key, stamp, shortestCommonAncesotr);
+           results.putLength(key, stamp, path.exists() ? path.length() : engine.digraph().E());
+       }
+
+       return synsetString(shortestCommonAncesotr);
    }
 
    // distance between noun1 and noun2 (defined below)
    public int distance(String noun1, String noun2) throws IOException {
        if (noun1 == null || noun2 == null) throw new NullPointerException();
-       if (!idsByNoun.contains(noun1) || !idsByNoun.contains(noun2)) throw new IllegalArgumentException();
-       ShortestCommonAncestor SCA = new ShortestCommonAncestor(wordnet);
-       Bag<Integer> one = idsByNoun.get(noun1);
-       Bag<Integer> two = idsByNoun.get(noun2);
+       int[] one = ids(noun1);
+       int[] two = ids(noun2);
+
+       QueryCache results = cache;
+       if (results == null) return sca.length(one, two);
+
+       QueryCache.Key key = QueryCache.key(one, two);
+       int length = results.length(key);
+       QueryMetrics recorder = metrics;
+       if (recorder != null) recorder.recordCacheLookup(length != -1);
+       if (length == -1) {
+           // and the ancestor, for sca() of the same pair
+           long stamp = results.generation();
+           ShortestCommonAncestor engine = sca;
+           AncestralPath path = engine.path(one, two);
+           length = path.exists() ? path.length() : engine.digraph().E();
+           results.putLength(key, stamp, length);
+           results.putAncestor(key, stamp, path.exists() ? path.ancestor() : -999);
+       }
+       return length;
+   }
 
-       return SCA.length(one, two);
+   // How similar noun1 and noun2 are by measure, scored on the path distance() and sca() report; one search,
+   // or none if the cache has that path already
+   public double similarity(String noun1, String noun2, Similarity measure) {
+       if (noun1 == null || noun2 == null || measure == null) throw new NullPointerException();
+       int[] one = ids(noun1);
+       int[] two = ids(noun2);
+
+       ShortestCommonAncestor engine = sca;
+       QueryCache results = cache;
+       if (results == null) return engine.similarity(one, two, measure);
+
+       QueryCache.Key key = QueryCache.key(one, two);
+       long cached = results.path(key);
+       QueryMetrics recorder = metrics;
+       if (recorder != null) recorder.recordCacheLookup(cached != -1);
+       int length;
+       int ancestor;
+       if (cached != -1) {
+           length = AncestralPath.length(cached);
+           ancestor = AncestralPath.ancestor(cached);
+       } else {
+           long stamp = results.generation();
+           AncestralPath path = engine.path(one, two);
+           length = path.exists() ? path.length() : engine.digraph().E();
+           ancestor = path.exists() ? path.ancestor() : -999;
+           results.putLength(key, stamp, length);
+           results.putAncestor(key, stamp, ancestor);
+       }
+       if (ancestor == -999) return measure.score(-1, 0, engine.maxDepth());
+       return measure.score(length, engine.depth(ancestor), engine.maxDepth());
    }
 
+   // How similar noun is to each of candidates by measure: entry i is similarity(noun, candidates[i]), from
+   // one search per candidate. Searching every candidate's ancestors in full and merging, as similarities()
+   // of a whole list does, costs more here than a search that stops as soon as the path is known
+   public double[] similarities(String noun, String[] candidates, Similarity measure) {
+       if (noun == null || candidates == null || measure == null) throw new NullPointerException();
+       int[] one = ids(noun);
+       int[][] ids = new int[candidates.length][];
+       for (int i = 0; i < candidates.length; i++) {
+           if (candidates[i] == null) throw new NullPointerException();
+           ids[i] = ids(candidates[i]);
+       }
+       ShortestCommonAncestor engine = sca;
+       double[] scores = new double[candidates.length];
+       for (int i = 0; i < candidates.length; i++) scores[i] = engine.similarity(one, ids[i], measure);
+       return scores;
+   }
+
+   // The k nouns nearest to noun, nearest first, by the distance distance() reports; nouns at the same
+   // distance come in no particular order, and noun itself is left out. Instead of a distance() per noun,
+   // one search spreads out from the synsets of noun, up through hypernyms and back down through hyponyms,
+   // and goes only as far as iteration does: stopping early, or a small k, keeps it local
+   public Iterable<String> nearest(String noun, int k) {
+       if (noun == null) throw new NullPointerException();
+       if (k < 0) throw new IllegalArgumentException("k must be nonnegative");
+       NounDictionary nouns = dictionary;         // read before the graph, which is never older
+       int self = nouns.find(noun);
+       if (self == -1) throw new IllegalArgumentException();
+       int[] sources = nouns.ids(self);
+       CompactDigraph G = sca.digraph();
+       CompactDigraph hyponyms = G.reverse();
+       return () -> new Iterator<String>() {
+           private final NearestSynsets search = new NearestSynsets(G, hyponyms, sources);
+           private final BitSet returned = new BitSet();
+           private int[] words = new int[0];      // words of the synset being handed out
+           private int word;
+           private int left = k;
+
+           {
+               returned.set(self);
+           }
+
+           public boolean hasNext() {
+               if (left == 0) return false;
+               while (true) {
+                   for (; word < words.length; word++) {
+                       if (!returned.get(words[word])) return true;
+                   }
+                   if (!search.next()) return false;
+                   if (search.vertex() >= nouns.synsetCount()) continue;   // added after nouns was read
+                   words = nouns.words(search.vertex());
+                   word = 0;
+               }
+           }
+
+           public String next() {
+               if (!hasNext()) throw new NoSuchElementException();
+               int n = words[word++];
+               returned.set(n);
+               left--;
+               return nouns.noun(n);
+           }
+       };
+   }
+
+   // cache the results of sca() and distance() for up to maximumSize pairs of synset sets,
+   // replacing any cache already in use; the cache is emptied whenever the graph is reloaded
+   public synchronized void enableCache(int maximumSize, QueryCache.Policy policy) {
+       cache = new QueryCache(maximumSize, policy);
+   }
+
+   // Precompute every synset's ancestors with their distances, after which sca() and distance() merge two
+   // short lists instead of searching the graph. Costs one pass over the graph now, and memory as
+   // reported by the returned index; reloading the hypernyms drops the index again
+   public synchronized AncestorIndex buildIndex() {
+       AncestorIndex index = new AncestorIndex(wordnet);
+       sca = sca.withIndex(index);
+       return index;
+   }
+
+   // Record every query from now on into metrics, which also gets the load times of this WordNet;
+   // replaces any metrics already in use. Until this is called, queries record nothing
+   public synchronized void enableMetrics(QueryMetrics metrics) {
+       if (metrics == null) throw new NullPointerException();
+       metrics.recordLoad(synsetLoadNanos, hypernymLoadNanos);
+       this.metrics = metrics;
+       sca = sca.withMetrics(metrics);
+   }
+
+   // stop recording queries
+   public synchronized void disableMetrics() {
+       metrics = null;
+       sca = sca.withMetrics(null);
+   }
+
+   // the metrics in use, or null
+   public QueryMetrics metrics() {
+       return metrics;
+   }
+
+   // Move the noun dictionary out of the Java heap into a direct buffer, so that it costs the garbage
+   // collector nothing; a WordNet loaded from a snapshot already reads its dictionary from the mapped file
+   public synchronized void storeDictionaryOffHeap() {
+       NounDictionary nouns = dictionary;
+       if (!nouns.isDirect()) dictionary = nouns.toDirect();
+   }
 
-    public void getSynsets(String synsets)  throws IOException{ /* "throw" required for FileReader*/
+   // Add a synset of the given nouns whose hypernyms are the given synsets, and return its id, which is
+   // the number of synsets before the call. The new synset is a leaf, so no existing answer changes: the
+   // graph, the index if there is one and the dictionary are extended in place, in amortized time
+   // proportional to the hypernyms (and their ancestors, with an index), and the cache is kept
+   public synchronized int addSynset(String[] nouns, int[] hypernyms) {
+       if (nouns == null || hypernyms == null) throw new NullPointerException();
+       if (nouns.length == 0 || hypernyms.length == 0) throw new IllegalArgumentException("a synset needs nouns and hypernyms");
+       for (String noun : nouns) {
+           if (noun == null) throw new NullPointerException();
+       }
+       for (int hypernym : hypernyms) checkSynset(hypernym);
+
+       // the engine learns the synset before the dictionary does, so no query can find it half added
+       CompactDigraph grown = wordnet.withVertex(hypernyms);
+       AncestorIndex index = sca.index();
+       if (index != null) index = index.withVertex(hypernyms);
+       wordnet = grown;
+       synsetCount = grown.V();
+       sca = sca.withVertices(grown, index);
+       int id = dictionary.addSynset(nouns);
+       compactDictionary();
+       return id;
+   }
+
+   // Add noun to the synset with the given id. Cached results are keyed by synset ids, so they stay valid
+   public synchronized void addNoun(String noun, int synset) {
+       if (noun == null) throw new NullPointerException();
+       checkSynset(synset);
+       dictionary.addWord(synset, noun);
+       compactDictionary();
+   }
+
+   // Add the edge synset->hypernym between existing synsets; an edge already there is left alone. Throws
+   // IllegalArgumentException if the edge would close a cycle, which takes one upward search from hypernym,
+   // bounded by its ancestors. The new edge changes the ancestors of synset and everything below it, and
+   // nothing else: one search down the hyponyms finds those synsets, and only their heights, their index
+   // lists if there is an index, and the cached pairs that hold one of them are computed again or dropped.
+   // The graph arrays, its reverse and the per-synset arrays of the heights and the index are still copied,
+   // in blocks, so that running queries keep the graph they started on: O(V + E) of copying per edge, and
+   // the first call after addSynset() builds the reverse once more
+   public synchronized void addHypernym(int synset, int hypernym) {
+       checkSynset(synset);
+       checkSynset(hypernym);
+       int[] offsets = wordnet.offsets();
+       int[] targets = wordnet.targets();
+       for (int e = offsets[synset]; e < offsets[synset + 1]; e++) {
+           if (targets[e] == hypernym) return;
+       }
+       if (sca.ancestorDistances(new int[] { hypernym }).distanceTo(synset) != -1) {
+           throw new IllegalArgumentException(synset + "->" + hypernym + " would make a cycle");
+       }
+
+       CompactDigraph grown = wordnet.withEdges(new int[] { synset }, new int[] { hypernym }, 1);
+       int[] below = grown.descendants(synset);
+       AncestorIndex index = sca.index();
+       if (index != null) index = index.withEdge(grown, below);
+       wordnet = grown;
+       sca = sca.withEdge(grown, below, index);
+       QueryCache results = cache;
+       if (results != null) {
+           BitSet changed = new BitSet(grown.V());
+           for (int v : below) changed.set(v);
+           results.invalidate(changed);
+       }
+   }
+
+   private void checkSynset(int id) {
+       if (id < 0 || id >= wordnet.V()) throw new IllegalArgumentException("synset " + id + " is not between 0 and " + (wordnet.V() - 1));
+   }
+
+   // fold the dictionary's additions into its image once they are a noticeable fraction of it,
+   // so lookups do not keep paying for the overlay
+   private void compactDictionary() {
+       NounDictionary nouns = dictionary;
+       if (nouns.additions() > 1024 + nouns.size() / 4) dictionary = nouns.compact();
+   }
+
+   // stop caching and drop the cache
+   public synchronized void disableCache() {
+       cache = null;
+   }
+
+   // the cache in use, for its hit, miss and eviction counts; null if caching is off
+   public QueryCache cache() {
+       return cache;
+   }
+
+
+    // distances between every pair of nouns: entry [i][j] is distance(nouns[i], nouns[j]).
+    // Each noun's ancestors are found by one BFS, and every pair is answered by merging two of those
+    public int[][] distances(String[] nouns) {
+        AncestorDistances[] reach = ancestorDistances(nouns);
+        int n = nouns.length;
+        int[][] distances = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                distances[i][j] = sca.length(reach[i], reach[j]);
+                distances[j][i] = distances[i][j];
+            }
+        }
+        return distances;
+    }
+
+    // similarities of every pair of nouns by measure: entry [i][j] is similarity(nouns[i], nouns[j], measure)
+    public double[][] similarities(String[] nouns, Similarity measure) {
+        if (measure == null) throw new NullPointerException();
+        AncestorDistances[] reach = ancestorDistances(nouns);
+        ShortestCommonAncestor engine = sca;
+        int n = nouns.length;
+        double[][] similarities = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                similarities[i][j] = engine.similarity(reach[i], reach[j], measure);
+                similarities[j][i] = similarities[i][j];
+            }
+        }
+        return similarities;
+    }
+
+    // shortest common ancestors of every pair of nouns: entry [i][j] is sca(nouns[i], nouns[j])
+    public String[][] ancestors(String[] nouns) {
+        AncestorDistances[] reach = ancestorDistances(nouns);
+        int n = nouns.length;
+        String[][] ancestors = new String[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                ancestors[i][j] = synsetString(sca.ancestor(reach[i], reach[j]));
+                ancestors[j][i] = ancestors[i][j];
+            }
+        }
+        return ancestors;
+    }
+
+    // the ancestors of each noun's synsets, for clients in this package that pair them up themselves.
+    // Every distinct noun is searched once, and the searches are batched into bit-parallel BFSs
+    AncestorDistances[] ancestorDistances(String[] nouns) {
+        if (nouns == null) throw new NullPointerException();
+        for (String noun : nouns) {
+            if (noun == null) throw new NullPointerException();
+            if (!dictionary.contains(noun)) throw new IllegalArgumentException();
+        }
+        LinearProbingHashST<String, Integer> seen = new LinearProbingHashST<>();
+        int[] distinct = new int[nouns.length];     // distinct[i] is the position of nouns[i] among the distinct nouns
+        int[][] subsets = new int[nouns.length][];
+        int count = 0;
+        for (int i = 0; i < nouns.length; i++) {
+            Integer at = seen.get(nouns[i]);
+            if (at == null) {
+                at = count;
+                subsets[count++] = ids(nouns[i]);
+                seen.put(nouns[i], at);
+            }
+            distinct[i] = at;
+        }
+        AncestorDistances[] searched = sca.ancestorDistances(Arrays.copyOf(subsets, count));
+        AncestorDistances[] reach = new AncestorDistances[nouns.length];
+        for (int i = 0; i < nouns.length; i++) reach[i] = searched[distinct[i]];
+        return reach;
+    }
+
+    // the ancestors of one noun's synsets, for batch clients in this package that pair them up themselves
+    AncestorDistances ancestorDistances(String noun) {
+        if (noun == null) throw new NullPointerException();
+        return sca.ancestorDistances(ids(noun));
+    }
+
+    // the ids of the synsets of noun, which must be a WordNet noun
+    private int[] ids(String noun) {
+        NounDictionary nouns = dictionary;
+        int n = nouns.find(noun);
+        if (n == -1) throw new IllegalArgumentException();
+        return nouns.ids(n);
+    }
+
+    // the synset with the given id, as sca() reports it: its words, last one first, run together
+    private String synsetString(int id) {
+        return dictionary.synset(id);
+    }
+
+    // the noun dictionary, for clients in this package
+    NounDictionary dictionary() {
+        return dictionary;
+    }
+
+    // the shared query engine, for clients in this package that work on synset ids
+    ShortestCommonAncestor engine() {
+        return sca;
+    }
+
+    // number of synsets, which are numbered 0 to synsetCount() - 1
+    int synsetCount() {
+        return wordnet.V();
+    }
+
+    public synchronized void getSynsets(String synsets)  throws IOException{ /* "throw" required for FileChannel*/
+        readSynsets(synsets, false);
+    }
+
+    // read the synsets; if lazy, the dictionary keeps only where each synset's words start in the
+    // mapped file and decodes a synset when it is asked for
+    private void readSynsets(String synsets, boolean lazy) throws IOException {
         // Read in all synsets (and do something with them)
+        // every line is "id,word word ...,gloss"; the gloss is skipped
+        long start = System.nanoTime();
         int lineCounter = 0;
-        BufferedReader input = new BufferedReader(new FileReader(synsets));
-        String line = input.readLine();
-        while (line != null) {
-            String parts[] = line.split(",");
-            int synId = Integer.parseInt(parts[0]);
-            String synStr = parts[1];
-            String[] synset = synStr.split(" ");
-
-            // put synset elements in bag
-            Bag<String> synBag = new Bag<String>();
-            for (int i = 0; i < synset.length; i++) {
-                synBag.add(synset[i]);
-            }
-            // associate bag of sysnset elements with synID
-            synsetsByID.put(synId, synBag);
-
-            // get ST of nouns and Bag<Ids>
-            // one noun may have many IDs
-            // need to check if noun key entry already exists
-            // and if it does, modify to include current id
-            Bag<Integer> currIDbag = new Bag<Integer>();
-            currIDbag.add(synId);
-            for (String string : synset) {
-                if (!idsByNoun.contains(string)) {
-                    idsByNoun.put(string, currIDbag);
-                }
-                else if (idsByNoun.contains(string)) {
-                    Bag<Integer> existingIDbag = idsByNoun.get(string);
-                    existingIDbag.add(synId);
-                    idsByNoun.put(string, existingIDbag);
-                }
-                else {
-                    System.out.println("Something went wrong initializing idsByNoun");
-                }
+        ByteBuffer file = CsvScanner.map(synsets);
+        CsvScanner input = new CsvScanner(file);
+        CsvScanner.StringPool words = new CsvScanner.StringPool();   // one String per distinct word
+        NounDictionary.Builder nouns = new NounDictionary.Builder(!lazy);
+        int[] starts = lazy ? new int[1024] : null;                    // starts[synId] is where its words begin
+        while (input.hasNext()) {
+            int synId = input.readInt();
+            input.skip(',');
+            if (lazy && synId >= 0) {
+                if (synId >= starts.length) starts = Arrays.copyOf(starts, Math.max(2 * starts.length, synId + 1));
+                starts[synId] = input.position();
             }
-                // Read next line and keep track of number of nouns for digraph initialization
+
+            // every word of the synset is a noun that belongs to synId
+            nouns.beginSynset(synId);
+            do {
+                nouns.addWord(input.readWord(words));
+            } while (input.skip(' '));
+
+            // Read next line and keep track of number of nouns for digraph initialization
+            input.skipLine();
             lineCounter++;
-            line = input.readLine();
         }
 
-        // initialize digraph to correct size
-        wordnet = new Digraph(lineCounter);
-
-        input.close();
+        // remember the number of synsets, getHypernyms() builds the digraph to this size
+        dictionary = lazy ? nouns.build(new SynsetText(file, Arrays.copyOf(starts, lineCounter)), false) : nouns.build(false);
+        synsetCount = lineCounter;
+        synsetLoadNanos = System.nanoTime() - start;
+        QueryMetrics recorder = metrics;
+        if (recorder != null) recorder.recordLoad(synsetLoadNanos, hypernymLoadNanos);
     }
 
-    public void getHypernyms(String hypernyms)  throws IOException{ /* "throw" required for FileReader*/
-        // Read in all hypernyms
-        BufferedReader input = new BufferedReader(new FileReader(hypernyms));
-        String line = input.readLine();
-        while (line != null) {
-            String parts[] = line.split(",");
-            int hypID = Integer.parseInt(parts[0]);
+    public synchronized void getHypernyms(String hypernyms)  throws IOException{ /* "throw" required for FileChannel*/
+        // Read in all hypernyms as a list of edges
+        // every line is "id,hypernym,hypernym,..."
+        long start = System.nanoTime();
+        int[] from = new int[synsetCount];
+        int[] to = new int[synsetCount];
+        int edges = 0;
+        CsvScanner input = CsvScanner.open(hypernyms);
+        while (input.hasNext()) {
+            int hypID = input.readInt();
             // create digraph relating ids
-                for (int i = 1; i < parts.length; i++) {
-                    wordnet.addEdge(hypID, Integer.parseInt(parts[i]));
+            while (input.skip(',')) {
+                if (input.atFieldEnd()) continue;   // trailing comma
+                if (edges == from.length) {
+                    from = Arrays.copyOf(from, 2 * edges + 1);
+                    to = Arrays.copyOf(to, 2 * edges + 1);
                 }
-            line = input.readLine();
+                from[edges] = hypID;
+                to[edges] = input.readInt();
+                edges++;
+            }
+            input.skipLine();
+        }
+        setHypernyms(from, to, edges);
+        hypernymLoadNanos = System.nanoTime() - start;
+        QueryMetrics recorder = metrics;
+        if (recorder != null) recorder.recordLoad(synsetLoadNanos, hypernymLoadNanos);
+    }
+
+    // the hypernym graph is the edges from[i]->to[i], i < edges
+    private void setHypernyms(int[] from, int[] to, int edges) {
+        // the graph never changes once read, so store it in compact form
+        wordnet = new CompactDigraph(synsetCount, from, to, edges);
+
+        // the query engine validates the graph once, queries only borrow per-thread scratch space
+        sca = new ShortestCommonAncestor(wordnet).withMetrics(metrics);
+
+        // cached results belong to the graph they were computed on
+        QueryCache results = cache;
+        if (results != null) results.invalidate();
+    }
+
+    // Write this WordNet to a binary snapshot that load() can map back in without parsing any text.
+    // Layout, all ints big-endian:
+    //   header      magic, version, V, E, dictionary bytes
+    //   graph       offsets[0..V], targets[0..E)
+    //   dictionary  the NounDictionary image, which load() uses straight from the mapped file
+    public synchronized void save(Path snapshot) throws IOException {
+        if (snapshot == null) throw new NullPointerException();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshot), 1 << 16));
+        NounDictionary nouns = dictionary.compact();
+        int[] offsets = wordnet.offsets();
+        int[] targets = wordnet.targets();
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(wordnet.V());
+        out.writeInt(wordnet.E());
+        out.writeInt(nouns.bytes());
+        for (int v = 0; v <= wordnet.V(); v++) out.writeInt(offsets[v]);
+        for (int e = 0; e < wordnet.E(); e++) out.writeInt(targets[e]);
+        nouns.writeTo(out);
+        out.close();
+    }
+
+    // Read a snapshot written by save(). The file is memory-mapped and the graph arrays are bulk-copied
+    // out of it; the dictionary is read in place. Only the header is checked, the text is never re-parsed.
+    public static WordNet load(Path snapshot) throws IOException {
+        if (snapshot == null) throw new NullPointerException();
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 20 || in.getInt() != SNAPSHOT_MAGIC) throw new IOException(snapshot + " is not a WordNet snapshot");
+        int version = in.getInt();
+        if (version != SNAPSHOT_VERSION) throw new IOException(snapshot + " has snapshot version " + version + ", expected " + SNAPSHOT_VERSION);
+        int V = in.getInt();
+        int E = in.getInt();
+        int dictionaryBytes = in.getInt();
+        if (V < 0 || E < 0 || dictionaryBytes < 0 || in.remaining() < 4L * (V + 1 + E) + dictionaryBytes) {
+            throw new IOException(snapshot + " is truncated");
+        }
+
+        try {
+            return load(in, V, E);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(snapshot + " is corrupt: " + e.getMessage(), e);
         }
-        input.close();
+    }
+
+    // the body of a snapshot, positioned just after the header
+    private static WordNet load(ByteBuffer in, int V, int E) {
+        long start = System.nanoTime();
+        WordNet wnet = new WordNet();
+        int[] offsets = new int[V + 1];
+        int[] targets = new int[E];
+        in.asIntBuffer().get(offsets).get(targets);
+        in.position(in.position() + 4 * (V + 1 + E));
+        wnet.synsetCount = V;
+        wnet.wordnet = new CompactDigraph(offsets, targets);
+        wnet.hypernymLoadNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+
+        wnet.dictionary = NounDictionary.wrap(in);
+        if (wnet.dictionary.synsetCount() != V) throw new IllegalArgumentException("dictionary has " + wnet.dictionary.synsetCount() + " synsets, graph has " + V);
+
+        wnet.sca = new ShortestCommonAncestor(wnet.wordnet);
+        wnet.synsetLoadNanos = System.nanoTime() - start;
+        return wnet;
     }
 
 
     // do unit testing of this class
+    // do the two WordNets hold the same graph and the same dictionary, down to the order of every list?
+    private static boolean sameContents(WordNet a, WordNet b) {
+        int V = a.wordnet.V();
+        int E = a.wordnet.E();
+        if (V != b.wordnet.V() || E != b.wordnet.E()) return false;
+        if (!Arrays.equals(a.wordnet.offsets(), 0, V + 1, b.wordnet.offsets(), 0, V + 1)) return false;
+        if (!Arrays.equals(a.wordnet.targets(), 0, E, b.wordnet.targets(), 0, E)) return false;
+        return a.dictionary.equals(b.dictionary);
+    }
+
     public static void main(String[] args) throws IOException { //"throw" because the constructor throws.
-        WordNet wnet = new WordNet("synsets.txt", "hypernyms.txt");
+        String synsets = args.length >= 2 ? args[0] : "synsets.txt";
+        String hypernyms = args.length >= 2 ? args[1] : "hypernyms.txt";
+        WordNet wnet = new WordNet(synsets, hypernyms);
         // how to test
         int count = 0;
         for (String s : wnet.nouns()) {
@@ -174,5 +696,12 @@ public class WordNet {
         System.out.println(wnet.isNoun("zdgewq"));
         System.out.println(wnet.isNoun("worm"));
 
+        // parallel loading must build exactly what the sequential constructor builds
+        WordNet parallel = new WordNet(synsets, hypernyms, ForkJoinPool.commonPool());
+        System.out.println("parallel load identical: " + sameContents(wnet, parallel));
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        System.out.println("single-thread pool identical: " + sameContents(wnet, new WordNet(synsets, hypernyms, single)));
+        single.shutdown();
     }
     }
@@ -0,0 +1,317 @@
+/*
+WordNetServer answers sca, distance and outcast queries over a socket, so that
+one loaded WordNet can serve any number of local clients.
+
+The protocol is one request per line and one response per line, in UTF-8:
+
+    SCA noun1 noun2              OK <synset>
+    DISTANCE noun1 noun2         OK <distance>
+    OUTCAST noun1 noun2 ...      OK <noun>
+    QUIT                         closes the connection
+    anything that fails          ERR <reason>
+
+Responses come back in the order of the requests, so a client may pipeline:
+send many requests before reading any response. Every connection has its own
+thread, which reads whatever requests have already arrived in full (up to
+MAX_BATCH), answers them as a batch and writes all the responses with one
+flush. A request whose line is still arriving waits for the next batch: the
+thread blocks only when it has nothing left to answer, so a client that
+writes its next request only after reading a response never stalls it. When a
+batch holds several DISTANCE requests they share their traversals: each
+distinct noun's ancestors are searched once and every pair is answered by
+merging two ancestor lists, as WordNet.distances() does, without going
+through the cache or the metrics. A lone DISTANCE request goes to
+WordNet.distance(), and every SCA request to WordNet.sca(), so to the cache
+and the metrics. SCA is never shared: where two ancestors are equally close,
+the merge and the search can pick different ones, and the answer to a
+request must not depend on what else is in its batch.
+
+The server listens on the loopback interface only. Run it with
+
+    java WordNetServer synsets.txt hypernyms.txt [port]
+
+and load it with java Benchmark server, which reports throughput and tail
+latency for a growing number of concurrent clients.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import edu.princeton.cs.algs4.LinearProbingHashST;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class WordNetServer implements Closeable {
+    private static final int MAX_BATCH = 256;      // requests answered together, at most
+
+    private final WordNet wordnet;
+    private final Outcast outcast;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder shared = new LongAdder();  // requests answered from a shared traversal
+    private volatile boolean closed;
+
+    // a server for wordnet on port of the loopback interface, or on any free port if port is 0.
+    // It accepts connections once start() is called
+    public WordNetServer(WordNet wordnet, int port) throws IOException {
+        if (wordnet == null) throw new NullPointerException();
+        this.wordnet = wordnet;
+        outcast = new Outcast(wordnet);
+        server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        AtomicInteger threads = new AtomicInteger();
+        connections = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "wordnet-connection-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // the port the server listens on
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    // accept connections on a background thread until close()
+    public void start() {
+        Thread acceptor = new Thread(this::accept, "wordnet-accept-" + port());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                open.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) StdOut.println("accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // answer the requests of one connection until the client leaves or sends QUIT
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            LineReader in = new LineReader(connection.getInputStream());
+            Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+            String[] batch = new String[MAX_BATCH];
+            while (true) {
+                String line = in.readLine();
+                if (line == null) return;
+                int count = 0;
+                batch[count++] = line;
+                // whatever else has already arrived in full joins the batch; reading on could block with the
+                // batch unanswered
+                while (count < MAX_BATCH && (line = in.readyLine()) != null) batch[count++] = line;
+
+                String[] responses = answer(batch, count);
+                for (int i = 0; i < count; i++) {
+                    if (responses[i] == null) {             // QUIT
+                        out.flush();
+                        return;
+                    }
+                    out.write(responses[i]);
+                    out.write('\n');
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to answer
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+    // the lines of a UTF-8 stream, ended by \n or \r\n. Unlike BufferedReader it tells whether a whole line
+    // has arrived: BufferedReader.ready() is true as soon as part of one has, and its readLine() then blocks
+    private static class LineReader {
+        private final InputStream in;
+        private byte[] buffer = new byte[1 << 16];
+        private int start, end;                     // the unread bytes are buffer[start..end)
+        private int scanned;                        // buffer[start..scanned) holds no newline
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        // the next line, waiting for it if need be; null at the end of the stream
+        String readLine() throws IOException {
+            while (true) {
+                String line = bufferedLine();
+                if (line != null) return line;
+                if (!fill()) {
+                    if (start == end) return null;
+                    line = decode(end);             // the last line has no newline
+                    start = scanned = end;
+                    return line;
+                }
+            }
+        }
+
+        // the next line if all of it has already arrived, null otherwise; never blocks
+        String readyLine() throws IOException {
+            String line = bufferedLine();
+            if (line == null && in.available() > 0 && fill()) line = bufferedLine();
+            return line;
+        }
+
+        private String bufferedLine() {
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    String line = decode(i);
+                    start = scanned = i + 1;
+                    return line;
+                }
+            }
+            scanned = end;
+            return null;
+        }
+
+        // buffer[start..newline) without a trailing \r; a newline byte never occurs inside a UTF-8 character
+        private String decode(int newline) {
+            int to = newline > start && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+            return new String(buffer, start, to - start, StandardCharsets.UTF_8);
+        }
+
+        // read more bytes, blocking until some arrive; false at the end of the stream
+        private boolean fill() throws IOException {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                scanned -= start;
+                start = 0;
+            }
+            if (end == buffer.length) buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            int n = in.read(buffer, end, buffer.length - end);
+            if (n < 0) return false;
+            end += n;
+            return true;
+        }
+    }
+
+    // the response to each of the first count requests, null for QUIT
+    private String[] answer(String[] lines, int count) {
+        requests.add(count);
+        batches.increment();
+        String[][] parsed = new String[count][];
+        String[] responses = new String[count];
+        int pairs = 0;
+        for (int i = 0; i < count; i++) {
+            parsed[i] = lines[i].trim().split("\\s+");
+            if (isDistance(parsed[i])) pairs++;
+        }
+
+        // several distances: every distinct noun is searched once
+        LinearProbingHashST<String, AncestorDistances> reach = pairs > 1 ? new LinearProbingHashST<String, AncestorDistances>() : null;
+        for (int i = 0; i < count; i++) {
+            try {
+                responses[i] = reach != null && isDistance(parsed[i]) ? shared(parsed[i], reach) : answer(parsed[i]);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                responses[i] = "ERR " + (e.getMessage() == null ? "not a WordNet noun" : e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                responses[i] = "ERR " + e;
+            }
+        }
+        return responses;
+    }
+
+    private static boolean isDistance(String[] request) {
+        return request.length == 3 && request[0].equalsIgnoreCase("DISTANCE");
+    }
+
+    // one request on its own
+    private String answer(String[] request) throws IOException {
+        String command = request[0].toUpperCase();
+        if (command.equals("QUIT") && request.length == 1) return null;
+        if (command.equals("SCA") && request.length == 3) return "OK " + wordnet.sca(request[1], request[2]);
+        if (command.equals("DISTANCE") && request.length == 3) return "OK " + wordnet.distance(request[1], request[2]);
+        if (command.equals("OUTCAST") && request.length >= 3) {
+            String[] nouns = new String[request.length - 1];
+            System.arraycopy(request, 1, nouns, 0, nouns.length);
+            for (String noun : nouns) {
+                if (!wordnet.isNoun(noun)) throw new IllegalArgumentException(noun + " is not a WordNet noun");
+            }
+            return "OK " + outcast.outcast(nouns);
+        }
+        if (request[0].isEmpty()) return "ERR empty request";
+        return "ERR unknown request " + request[0] + " with " + (request.length - 1) + " arguments";
+    }
+
+    // a DISTANCE request answered from ancestor lists shared by the batch; the length, unlike the ancestor,
+    // is the same whichever way it is found
+    private String shared(String[] request, LinearProbingHashST<String, AncestorDistances> reach) {
+        AncestorDistances one = ancestors(request[1], reach);
+        AncestorDistances two = ancestors(request[2], reach);
+        shared.increment();
+        int length = one.length(two);
+        return "OK " + (length == -1 ? wordnet.engine().digraph().E() : length);
+    }
+
+    private AncestorDistances ancestors(String noun, LinearProbingHashST<String, AncestorDistances> reach) {
+        AncestorDistances ancestors = reach.get(noun);
+        if (ancestors == null) {
+            if (!wordnet.isNoun(noun)) throw new IllegalArgumentException(noun + " is not a WordNet noun");
+            ancestors = wordnet.ancestorDistances(noun);
+            reach.put(noun, ancestors);
+        }
+        return ancestors;
+    }
+
+    // requests answered so far
+    public long requests() {
+        return requests.sum();
+    }
+
+    // the average number of requests answered together
+    public double meanBatch() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) requests.sum() / count;
+    }
+
+    // requests answered from traversals shared with other requests of their batch
+    public long sharedRequests() {
+        return shared.sum();
+    }
+
+    // stop accepting, and close every connection
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (Socket socket : open) socket.close();
+        connections.shutdown();
+    }
+
+    public String toString() {
+        return String.format("WordNetServer on port %d: %d connections, %d requests, %.1f per batch, %d shared",
+                             port(), open.size(), requests(), meanBatch(), sharedRequests());
+    }
+
+    public static void main(String[] args) throws IOException {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        WordNetServer server = new WordNetServer(wordnet, args.length > 2 ? Integer.parseInt(args[2]) : 4747);
+        StdOut.println("listening on port " + server.port());
+        server.accept();
+    }
+}
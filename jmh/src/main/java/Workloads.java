@@ -0,0 +1,123 @@
+/*
+Workloads sets up what the JMH benchmarks in wordnet.jmh time. JMH does not
+accept a benchmark class in the default package, and a class in a named
+package cannot refer to the WordNet classes, which are all in the default
+package. So every method here builds its inputs and returns a function from
+java.util.function that does one operation per call; the benchmarks look the
+method up by name in their setup and time only the calls.
+
+The synthetic DAGs and the Zipf draws are Benchmark's, so both harnesses
+measure the same inputs.
+
+Supporting code for this assignment is part of the Algorithms Fourth Edition
+Library and can be found here: https://algs4.cs.princeton.edu/code/
+ */
+
+import edu.princeton.cs.algs4.Digraph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+public class Workloads {
+    private static final int PAIRS = 1 << 14;      // noun pairs and groups cycled through, a power of two
+
+    // a new WordNet from the two files per call
+    public static Supplier<Object> construct(String synsets, String hypernyms) {
+        return () -> {
+            try {
+                return new WordNet(synsets, hypernyms);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    // One length() or ancestor() query per call, on a DAG of about size vertices of the given shape:
+    // chain, fan-in or ladder. overload int asks for two vertices, subset for two lists of them
+    public static IntSupplier sca(String shape, int size, String overload, String query) {
+        Digraph G;
+        int v, w;
+        List<Integer> A, B;
+        if (shape.equals("chain")) {
+            G = Benchmark.deepChain(size);
+            v = 0;
+            w = size;
+            A = Arrays.asList(0, size / 2);
+            B = Arrays.asList(size);
+        } else if (shape.equals("fan-in")) {
+            G = Benchmark.wideFanIn(size);
+            v = 0;
+            w = 1;
+            A = new ArrayList<Integer>();
+            B = new ArrayList<Integer>();
+            for (int x = 0; x < size; x++) (x % 2 == 0 ? A : B).add(x);
+        } else if (shape.equals("ladder")) {
+            G = Benchmark.diamondLadder(size / 3);
+            v = 0;
+            w = G.V() - 1;
+            A = Arrays.asList(0, 1, 2);
+            B = Arrays.asList(w);
+        } else throw new IllegalArgumentException("unknown shape " + shape);
+
+        ShortestCommonAncestor sca = new ShortestCommonAncestor(G);
+        boolean length = query.equals("length");
+        if (!length && !query.equals("ancestor")) throw new IllegalArgumentException("unknown query " + query);
+        if (overload.equals("int")) return length ? () -> sca.length(v, w) : () -> sca.ancestor(v, w);
+        if (!overload.equals("subset")) throw new IllegalArgumentException("unknown overload " + overload);
+        return () -> {
+            try {
+                return length ? sca.length(A, B) : sca.ancestor(A, B);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    // distance() on the next of a fixed cycle of noun pairs per call; pairs uniform draws both nouns
+    // uniformly, zipf from a Zipf distribution over the nouns, so that a few take part in most pairs
+    public static IntSupplier distance(String synsets, String hypernyms, String pairs) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        String[] nouns = Benchmark.nouns(wordnet);
+        Random random = new Random(42);
+        int[] drawn;
+        if (pairs.equals("zipf")) drawn = Benchmark.zipf(nouns.length, 2 * PAIRS, random);
+        else if (pairs.equals("uniform")) drawn = random.ints(2 * PAIRS, 0, nouns.length).toArray();
+        else throw new IllegalArgumentException("unknown pairs " + pairs);
+        int[] next = new int[1];
+        return () -> {
+            int i = next[0]++ & (PAIRS - 1);
+            try {
+                return wordnet.distance(nouns[drawn[2 * i]], nouns[drawn[2 * i + 1]]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    // Outcast.outcast() on the next of a fixed cycle of random groups of n nouns per call
+    public static Supplier<String> outcast(String synsets, String hypernyms, int n) throws IOException {
+        WordNet wordnet = new WordNet(synsets, hypernyms);
+        Outcast outcast = new Outcast(wordnet);
+        String[] nouns = Benchmark.nouns(wordnet);
+        Random random = new Random(42);
+        int count = Math.max(4, Integer.highestOneBit(PAIRS * 5 / (n * n)));
+        String[][] groups = new String[count][n];
+        for (String[] group : groups) {
+            for (int i = 0; i < n; i++) group[i] = nouns[random.nextInt(nouns.length)];
+        }
+        int[] next = new int[1];
+        return () -> {
+            try {
+                return outcast.outcast(groups[next[0]++ & (count - 1)]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
@@ -0,0 +1,55 @@
+/*
+AncestorBenchmark times single ShortestCommonAncestor queries on the
+synthetic DAGs: a deep chain, a wide fan-in and a ladder of diamonds, each
+built so that the query has to climb the whole graph. It covers length()
+and ancestor(), each for two vertices (int) and for two subsets of them.
+ */
+
+package wordnet.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AncestorBenchmark {
+    @Param({ "chain", "fan-in", "ladder" })
+    public String shape;
+
+    @Param({ "1024", "65536" })
+    public int size;
+
+    @Param({ "int", "subset" })
+    public String overload;
+
+    @Param({ "length", "ancestor" })
+    public String query;
+
+    private IntSupplier sca;
+
+    @Setup
+    public void setUp() throws Exception {
+        sca = Workload.of(IntSupplier.class, "sca", shape, size, overload, query);
+    }
+
+    @Benchmark
+    public int query() {
+        return sca.getAsInt();
+    }
+}
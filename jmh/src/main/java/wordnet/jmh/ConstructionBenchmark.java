@@ -0,0 +1,49 @@
+/*
+ConstructionBenchmark times building a WordNet from its synsets and hypernyms
+files, from reading the files to the finished graph and noun dictionary. Run
+it with -prof gc, as Run does, for the bytes allocated per construction and
+the collections they cause.
+ */
+
+package wordnet.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstructionBenchmark {
+    @Param("synsets.txt")
+    public String synsets;
+
+    @Param("hypernyms.txt")
+    public String hypernyms;
+
+    private Supplier<?> construct;
+
+    @Setup
+    public void setUp() throws Exception {
+        construct = Workload.of(Supplier.class, "construct", synsets, hypernyms);
+    }
+
+    @Benchmark
+    public Object construct() {
+        return construct.get();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+DistanceBenchmark times WordNet.distance() on a fixed cycle of noun pairs,
+drawn either uniformly or from a Zipf distribution over the nouns, where a
+few nouns take part in most of the pairs.
+ */
+
+package wordnet.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+    @Param("synsets.txt")
+    public String synsets;
+
+    @Param("hypernyms.txt")
+    public String hypernyms;
+
+    @Param({ "uniform", "zipf" })
+    public String pairs;
+
+    private IntSupplier distance;
+
+    @Setup
+    public void setUp() throws Exception {
+        distance = Workload.of(IntSupplier.class, "distance", synsets, hypernyms, pairs);
+    }
+
+    @Benchmark
+    public int distance() {
+        return distance.getAsInt();
+    }
+}
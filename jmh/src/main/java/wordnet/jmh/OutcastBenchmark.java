@@ -0,0 +1,51 @@
+/*
+OutcastBenchmark times Outcast.outcast() on random groups of 5 to 500 nouns.
+A group of n nouns costs n * (n - 1) / 2 distances, so the time per call
+should grow with the square of n.
+ */
+
+package wordnet.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutcastBenchmark {
+    @Param("synsets.txt")
+    public String synsets;
+
+    @Param("hypernyms.txt")
+    public String hypernyms;
+
+    @Param({ "5", "20", "50", "200", "500" })
+    public int n;
+
+    private Supplier<?> outcast;
+
+    @Setup
+    public void setUp() throws Exception {
+        outcast = Workload.of(Supplier.class, "outcast", synsets, hypernyms, n);
+    }
+
+    @Benchmark
+    public Object outcast() {
+        return outcast.get();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+Run is the main class of benchmarks.jar. It takes the same arguments as
+JMH's own Main, and always adds the gc profiler (-prof gc) to a run, so that
+every result comes with gc.alloc.rate.norm, the bytes allocated per
+operation, and the count and time of the collections during measurement.
+
+    java -jar jmh/target/benchmarks.jar -p synsets=synsets.txt -p hypernyms=hypernyms.txt
+    java -jar jmh/target/benchmarks.jar Outcast -p n=50 -p synsets=... -p hypernyms=...
+    java -jar jmh/target/benchmarks.jar -l
+ */
+
+package wordnet.jmh;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+public final class Run {
+    private Run() { }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        boolean listing = options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                          || options.shouldListProfilers() || options.shouldListResultFormats();
+        boolean profiled = false;
+        for (ProfilerConfig profiler : options.getProfilers()) {
+            String name = profiler.getKlass();
+            if (name.equals("gc") || name.equals(GCProfiler.class.getName())) profiled = true;
+        }
+        if (listing || profiled) {
+            Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+}
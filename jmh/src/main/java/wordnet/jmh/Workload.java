@@ -0,0 +1,31 @@
+/*
+Workload finds the functions the benchmarks time. They are built by the
+static methods of Workloads, in the default package, which no class in a
+named package can refer to; so a method is looked up by name through
+reflection, once per trial, and the benchmark then calls the function it
+returned directly.
+ */
+
+package wordnet.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+final class Workload {
+    private Workload() { }
+
+    // what Workloads.name(args) returns, as a type
+    static <T> T of(Class<T> type, String name, Object... args) throws Exception {
+        for (Method method : Class.forName("Workloads").getMethods()) {
+            if (!method.getName().equals(name)) continue;
+            try {
+                return type.cast(method.invoke(null, args));
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) throw (Exception) cause;
+                throw (Error) cause;
+            }
+        }
+        throw new NoSuchMethodException("Workloads." + name);
+    }
+}